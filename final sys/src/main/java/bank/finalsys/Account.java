@@ -1,20 +1,42 @@
 package bank.finalsys;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class Account implements AccountOperations {
+    protected static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    protected static final int DAYS_PER_MONTH = 30;
+    // Export snapshots are numbered; the first change to an account after a snapshot
+    // begins keeps the balance it had at that point (copy on write)
+    private static final AtomicLong currentSnapshot = new AtomicLong();
+    // Branch names repeat across millions of accounts, so each account keeps a code
+    private static final CodeDictionary BRANCHES = new CodeDictionary();
+
     protected String accountNumber;
     protected double balance;
-    protected String branch;
+    private final short branchCode;
     protected BankCustomer customer;
-    protected Date dateOpened;
+    private final long openedAt;
+    protected long lastAccrual;
+    // Version, posted balance and accrual time of the record as last read from or written to disk
+    private long version;
+    private double savedBalance = Double.NaN;
+    private long savedLastAccrual;
+    // Interest posted here since the record was last synced; part of the unsaved change
+    private double unsavedInterest;
+    private final long createdSnapshot = currentSnapshot.get();
+    // Only allocated for accounts that change while an export is running
+    private SnapshotCopy preserved;
+    // Time the account was closed, 0 while open. Closed accounts are kept as tombstones until compacted.
+    private volatile long closedAt;
 
     public Account(String accountNumber, double balance, String branch, BankCustomer customer) {
         this.accountNumber = accountNumber;
         this.balance = balance;
-        this.branch = branch;
+        this.branchCode = BRANCHES.code(branch);
         this.customer = customer;
-        this.dateOpened = new Date();
+        this.openedAt = System.currentTimeMillis();
+        this.lastAccrual = openedAt;
     }
 
     @Override
@@ -32,12 +54,120 @@ public abstract class Account implements AccountOperations {
     }
 
     public String getAccountNumber() { return accountNumber; }
-    public String getBranch() { return branch; }
+    public String getBranch() { return BRANCHES.value(branchCode); }
     public BankCustomer getCustomer() { return customer; }
-    public Date getDateOpened() { return dateOpened; }
+    public Date getDateOpened() { return new Date(openedAt); }
+    public long getOpenedAt() { return openedAt; }
+    public long getLastAccrual() { return lastAccrual; }
+
+    // Balance without any interest that has accrued but not yet been posted
+    public double getPostedBalance() { return balance; }
+
+    void setLastAccrual(long lastAccrual) { this.lastAccrual = lastAccrual; }
+
+    long getVersion() { return version; }
+
+    // Change posted here since the record was last synced with disk
+    double getUnsavedChange() {
+        return Double.isNaN(savedBalance) ? 0 : balance - savedBalance;
+    }
+
+    boolean hasUnsavedChanges() {
+        return Double.isNaN(savedBalance) || balance != savedBalance;
+    }
+
+    void markSynced(long version, double diskBalance) {
+        this.version = version;
+        this.savedBalance = diskBalance;
+        this.savedLastAccrual = lastAccrual;
+        this.unsavedInterest = 0;
+    }
+
+    // Adopts a newer record written elsewhere and re-applies the change posted here since
+    // the last sync. If the other writer has also posted interest since then, the interest
+    // posted here covers the same days and is dropped; accrual resumes from the other
+    // writer's posting. Returns the interest dropped. Callers hold the account lock.
+    double mergeNewer(long diskVersion, double diskBalance, long diskLastAccrual) {
+        boolean accruedElsewhere = diskLastAccrual > savedLastAccrual;
+        double dropped = accruedElsewhere ? unsavedInterest : 0;
+        balance = diskBalance + getUnsavedChange() - dropped;
+        if (accruedElsewhere) {
+            lastAccrual = diskLastAccrual;
+            unsavedInterest = 0;
+        }
+        version = diskVersion;
+        savedBalance = diskBalance;
+        savedLastAccrual = diskLastAccrual;
+        return dropped;
+    }
 
     protected void setBalance(double balance) { this.balance = balance; }
 
+    public boolean isClosed() { return closedAt != 0; }
+    public long getClosedAt() { return closedAt; }
+
+    // Forgets the synced balance so the next save writes the tombstone under a new version
+    void markClosed(long closedAt) {
+        this.closedAt = closedAt;
+        this.savedBalance = Double.NaN;
+    }
+
+    void reopen() {
+        this.closedAt = 0;
+    }
+
+    static long beginSnapshot() {
+        return currentSnapshot.incrementAndGet();
+    }
+
+    static long currentSnapshot() {
+        return currentSnapshot.get();
+    }
+
+    // Called under the account lock before an operation changes the balance. The operation
+    // reads the snapshot number once, after taking all its locks, so both legs of a
+    // transfer land on the same side of a snapshot.
+    void preserveForSnapshot(long snapshot) {
+        if (preserved == null) {
+            if (snapshot != 0) {
+                preserved = new SnapshotCopy(snapshot, balance);
+            }
+        } else if (preserved.snapshot != snapshot) {
+            preserved.snapshot = snapshot;
+            preserved.balance = balance;
+        }
+    }
+
+    // Posted balance when the snapshot began, or NaN for an account opened after it.
+    // Callers hold the account lock.
+    double getSnapshotBalance(long snapshot) {
+        if (createdSnapshot >= snapshot) {
+            return Double.NaN;
+        }
+        return preserved != null && preserved.snapshot == snapshot ? preserved.balance : balance;
+    }
+
+    // Monthly rate applied pro rata per whole day elapsed since the last posting
+    protected double accruedInterest(double monthlyRate, long now) {
+        long days = (now - lastAccrual) / DAY_MILLIS;
+        if (days <= 0) {
+            return 0;
+        }
+        return balance * monthlyRate * days / DAYS_PER_MONTH;
+    }
+
+    protected double postAccruedInterest(double monthlyRate, long now) {
+        long days = (now - lastAccrual) / DAY_MILLIS;
+        if (days <= 0) {
+            return 0;
+        }
+        double interest = balance * monthlyRate * days / DAYS_PER_MONTH;
+        balance += interest;
+        unsavedInterest += interest;
+        lastAccrual += days * DAY_MILLIS;
+        return interest;
+    }
+
     public abstract String getAccountType();
     public abstract String getAccountDetails();
 
@@ -46,7 +176,17 @@ public abstract class Account implements AccountOperations {
         return getAccountType() + " Account [" +
                 "Account Number: " + accountNumber +
                 ", Balance: BWP " + String.format("%.2f", balance) +
-                ", Branch: " + branch +
+                ", Branch: " + getBranch() +
                 ", Customer: " + customer.getFullName() + "]";
     }
+
+    private static class SnapshotCopy {
+        long snapshot;
+        double balance;
+
+        SnapshotCopy(long snapshot, double balance) {
+            this.snapshot = snapshot;
+            this.balance = balance;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package bank.finalsys;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Secondary indexes over the live accounts: hash sets by account type and by branch,
+// and a skip list ordered by posted balance. BankService updates them on every
+// opening and balance change. A query starts from whichever index yields the fewest
+// candidates, so it touches little more than the accounts it returns.
+public class AccountIndex {
+    private final Map<String, Set<Account>> byType = new ConcurrentHashMap<>();
+    private final Map<String, Set<Account>> byBranch = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<BalanceKey, Account> byBalance = new ConcurrentSkipListMap<>();
+    // Each account's current position in byBalance
+    private final Map<Account, BalanceKey> balanceKeys = new ConcurrentHashMap<>();
+
+    public void add(Account account) {
+        byType.computeIfAbsent(account.getAccountType(), key -> ConcurrentHashMap.newKeySet()).add(account);
+        byBranch.computeIfAbsent(account.getBranch(), key -> ConcurrentHashMap.newKeySet()).add(account);
+        balanceChanged(account);
+    }
+
+    public void remove(Account account) {
+        Set<Account> typeSet = byType.get(account.getAccountType());
+        if (typeSet != null) typeSet.remove(account);
+        Set<Account> branchSet = byBranch.get(account.getBranch());
+        if (branchSet != null) branchSet.remove(account);
+        BalanceKey key = balanceKeys.remove(account);
+        if (key != null) byBalance.remove(key);
+    }
+
+    // Callers hold the account lock. A concurrent range query may miss the account while it moves.
+    public void balanceChanged(Account account) {
+        BalanceKey key = new BalanceKey(account.getPostedBalance(), account.getAccountNumber());
+        BalanceKey previous = balanceKeys.put(account, key);
+        if (previous != null) {
+            byBalance.remove(previous);
+        }
+        byBalance.put(key, account);
+    }
+
+    public int size() {
+        return balanceKeys.size();
+    }
+
+    // Matches in ascending balance order when the balance index drives the query
+    public List<Account> find(AccountQuery query) {
+        Set<Account> smallest = null;
+        if (query.getAccountType() != null) {
+            smallest = byType.getOrDefault(query.getAccountType(), Collections.emptySet());
+        }
+        if (query.getBranch() != null) {
+            Set<Account> branchSet = byBranch.getOrDefault(query.getBranch(), Collections.emptySet());
+            if (smallest == null || branchSet.size() < smallest.size()) {
+                smallest = branchSet;
+            }
+        }
+
+        if (query.hasBalanceRange()) {
+            Collection<Account> range = byBalance.subMap(
+                    new BalanceKey(query.getMinBalance(), ""), true,
+                    new BalanceKey(query.getMaxBalance(), "\uffff"), true).values();
+            if (smallest == null) {
+                return collect(range, query);
+            }
+            // Walk the balance range only while it stays smaller than the best hash set
+            List<Account> candidates = new ArrayList<>();
+            int budget = smallest.size();
+            for (Account account : range) {
+                if (candidates.size() >= budget) {
+                    candidates = null;
+                    break;
+                }
+                candidates.add(account);
+            }
+            if (candidates != null) {
+                return collect(candidates, query);
+            }
+        }
+        return collect(smallest != null ? smallest : balanceKeys.keySet(), query);
+    }
+
+    private List<Account> collect(Collection<Account> candidates, AccountQuery query) {
+        List<Account> matches = new ArrayList<>();
+        for (Account account : candidates) {
+            if (query.matches(account)) {
+                matches.add(account);
+                if (matches.size() >= query.getLimit()) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static class BalanceKey implements Comparable<BalanceKey> {
+        final double balance;
+        final String accountNumber;
+
+        BalanceKey(double balance, String accountNumber) {
+            this.balance = balance;
+            this.accountNumber = accountNumber;
+        }
+
+        @Override
+        public int compareTo(BalanceKey other) {
+            int byBalance = Double.compare(balance, other.balance);
+            return byBalance != 0 ? byBalance : accountNumber.compareTo(other.accountNumber);
+        }
+    }
+}
\ No newline at end of file
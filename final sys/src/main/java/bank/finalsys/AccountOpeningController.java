@@ -6,6 +6,8 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 public class AccountOpeningController {
+    private static final BankLogger LOG = BankLogger.getLogger(AccountOpeningController.class);
+
     @FXML private RadioButton individualRadio;
     @FXML private RadioButton businessRadio;
     @FXML private ComboBox<String> accountTypeComboBox;
@@ -213,7 +215,7 @@ public class AccountOpeningController {
         } catch (Exception e) {
             messageLabel.setStyle("-fx-text-fill: red;");
             messageLabel.setText("Error: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("account.open.failed", e);
         }
     }
 
@@ -0,0 +1,63 @@
+package bank.finalsys;
+
+// Filter over accounts answered by AccountIndex, e.g.
+//   new AccountQuery().type("INVESTMENT").branch("Main Branch").minBalance(10000)
+// Unset criteria match everything; balance bounds are inclusive and apply to the posted balance.
+public class AccountQuery {
+    private String accountType;
+    private String branch;
+    private double minBalance = Double.NEGATIVE_INFINITY;
+    private double maxBalance = Double.POSITIVE_INFINITY;
+    private int limit = Integer.MAX_VALUE;
+
+    public AccountQuery type(String accountType) {
+        this.accountType = accountType == null ? null : accountType.toUpperCase();
+        return this;
+    }
+
+    public AccountQuery branch(String branch) {
+        this.branch = branch;
+        return this;
+    }
+
+    public AccountQuery minBalance(double minBalance) {
+        this.minBalance = minBalance;
+        return this;
+    }
+
+    public AccountQuery maxBalance(double maxBalance) {
+        this.maxBalance = maxBalance;
+        return this;
+    }
+
+    public AccountQuery limit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Query limit must be positive");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public String getAccountType() { return accountType; }
+    public String getBranch() { return branch; }
+    public double getMinBalance() { return minBalance; }
+    public double getMaxBalance() { return maxBalance; }
+    public int getLimit() { return limit; }
+
+    public boolean hasBalanceRange() {
+        return minBalance != Double.NEGATIVE_INFINITY || maxBalance != Double.POSITIVE_INFINITY;
+    }
+
+    public boolean matches(Account account) {
+        double balance = account.getPostedBalance();
+        return (accountType == null || accountType.equals(account.getAccountType()))
+                && (branch == null || branch.equals(account.getBranch()))
+                && balance >= minBalance && balance <= maxBalance;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountQuery [type=" + accountType + ", branch=" + branch + ", balance " + minBalance + ".." +
+                maxBalance + (limit == Integer.MAX_VALUE ? "" : ", limit=" + limit) + "]";
+    }
+}
\ No newline at end of file
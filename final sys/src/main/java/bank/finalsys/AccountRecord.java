@@ -0,0 +1,157 @@
+package bank.finalsys;
+
+public class AccountRecord {
+    private static final BankLogger LOG = BankLogger.getLogger(AccountRecord.class);
+
+    private final String type;
+    private final String accountNumber;
+    private final double balance;
+    private final String branch;
+    private final String customerId;
+    private final long version;
+    private final long closedAt;
+    private final String[] parts;
+
+    private AccountRecord(String type, String accountNumber, double balance, String branch,
+                          String customerId, long version, long closedAt, String[] parts) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.balance = balance;
+        this.branch = branch;
+        this.customerId = customerId;
+        this.version = version;
+        this.closedAt = closedAt;
+        this.parts = parts;
+    }
+
+    public static AccountRecord parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 5) {
+            return null;
+        }
+        try {
+            int versionIndex = versionIndex(parts[0]);
+            long version = parts.length > versionIndex ? Long.parseLong(parts[versionIndex]) : 0;
+            long closedAt = parts.length > versionIndex + 1 ? Long.parseLong(parts[versionIndex + 1]) : 0;
+            return new AccountRecord(parts[0], parts[1], Double.parseDouble(parts[2]), parts[3], parts[4], version,
+                    closedAt, parts);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // The account number and version of a record, read without splitting the line, so a merge
+    // can pass over records it already holds. The number is null when the line is too short,
+    // and the version -1 when it is not a number.
+    static String accountNumberOf(String line) {
+        return field(line, 1);
+    }
+
+    static long versionOf(String line) {
+        String version = field(line, versionIndex(field(line, 0)));
+        if (version == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // The index'th field of a record, or null if it has fewer fields
+    static String field(String line, int index) {
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start = line.indexOf('|', start) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        int end = line.indexOf('|', start);
+        return end < 0 ? line.substring(start) : line.substring(start, end);
+    }
+
+    // The version follows the type's own fields; records written before versioning have none and
+    // read as 0. Closed accounts carry their closing time after the version.
+    private static int versionIndex(String type) {
+        return "CHEQUE".equals(type) ? 7 : 6;
+    }
+
+    public static String format(Account account) {
+        String line = account.getAccountType() + "|" +
+                account.getAccountNumber() + "|" +
+                account.getPostedBalance() + "|" +
+                account.getBranch() + "|" +
+                account.getCustomer().getCustomerId();
+
+        if (account instanceof ChequeAccount) {
+            ChequeAccount chequeAccount = (ChequeAccount) account;
+            line += "|" + chequeAccount.getEmployer() + "|" + chequeAccount.getCompanyAddress();
+        } else if (account instanceof InterestBearing) {
+            line += "|" + account.getLastAccrual();
+        }
+        line += "|" + account.getVersion();
+        return account.isClosed() ? line + "|" + account.getClosedAt() : line;
+    }
+
+    public Account toAccount(BankCustomer customer) {
+        Account account = createAccount(customer);
+        if (account != null) {
+            if (closedAt != 0) {
+                account.markClosed(closedAt);
+            }
+            account.markSynced(version, balance);
+        }
+        return account;
+    }
+
+    private Account createAccount(BankCustomer customer) {
+        switch (type) {
+            case "SAVINGS":
+                return withLastAccrual(SavingsAccount.restore(accountNumber, balance, branch, customer));
+            case "INVESTMENT":
+                return withLastAccrual(InvestmentAccount.restore(accountNumber, balance, branch, customer));
+            case "CHEQUE":
+                if (parts.length >= 7) {
+                    return new ChequeAccount(accountNumber, balance, branch, customer, parts[5], parts[6]);
+                }
+                // Incomplete Cheque account data: keep the account with default employer values
+                LOG.warn("account.cheque.incomplete", "account", accountNumber, "fields", parts.length);
+                return new ChequeAccount(accountNumber, balance, branch, customer, "Unknown Employer", "");
+            default:
+                LOG.warn("account.type.unknown", "account", accountNumber, "type", type);
+                return null;
+        }
+    }
+
+    // Records written before lazy accrual have no timestamp and start accruing from load time
+    private Account withLastAccrual(Account account) {
+        long lastAccrual = getLastAccrual();
+        if (lastAccrual > 0) {
+            account.setLastAccrual(lastAccrual);
+        }
+        return account;
+    }
+
+    // 0 when the record carries no accrual timestamp
+    public long getLastAccrual() {
+        if (!"CHEQUE".equals(type) && parts.length >= 6) {
+            try {
+                return Long.parseLong(parts[5]);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    public String getType() { return type; }
+    public String getAccountNumber() { return accountNumber; }
+    public double getBalance() { return balance; }
+    public String getBranch() { return branch; }
+    public String getCustomerId() { return customerId; }
+    public long getVersion() { return version; }
+    public boolean isClosed() { return closedAt != 0; }
+    public long getClosedAt() { return closedAt; }
+}
\ No newline at end of file
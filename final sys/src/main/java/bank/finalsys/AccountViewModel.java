@@ -0,0 +1,64 @@
+package bank.finalsys;
+
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.util.Callback;
+
+// Observable view of one account for JavaFX controls. The balance property is only
+// written on the FX thread, by CustomerViewModel when the bank service reports a change.
+public class AccountViewModel {
+    private final Account account;
+    private final ReadOnlyObjectWrapper<Double> balance;
+
+    public AccountViewModel(Account account) {
+        this.account = account;
+        this.balance = new ReadOnlyObjectWrapper<>(this, "balance", account.getBalance());
+    }
+
+    public Account getAccount() { return account; }
+    public String getAccountNumber() { return account.getAccountNumber(); }
+    public String getAccountType() { return account.getAccountType(); }
+
+    public ReadOnlyObjectProperty<Double> balanceProperty() {
+        return balance.getReadOnlyProperty();
+    }
+
+    public double getBalance() {
+        return balance.get();
+    }
+
+    void refresh() {
+        balance.set(account.getBalance());
+    }
+
+    // Cell factory for lists and combo boxes; each cell follows its account's balance
+    public static Callback<ListView<AccountViewModel>, ListCell<AccountViewModel>> cellFactory(boolean showBalance) {
+        return listView -> new AccountCell(showBalance);
+    }
+
+    public static class AccountCell extends ListCell<AccountViewModel> {
+        private final boolean showBalance;
+
+        public AccountCell(boolean showBalance) {
+            this.showBalance = showBalance;
+        }
+
+        @Override
+        protected void updateItem(AccountViewModel item, boolean empty) {
+            super.updateItem(item, empty);
+            textProperty().unbind();
+            if (empty || item == null) {
+                setText(null);
+            } else if (showBalance) {
+                textProperty().bind(Bindings.createStringBinding(() -> item.getAccountNumber() + " - " +
+                        item.getAccountType() + " (BWP " + String.format("%.2f", item.getBalance()) + ")",
+                        item.balanceProperty()));
+            } else {
+                setText(item.getAccountNumber() + " - " + item.getAccountType());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package bank.finalsys;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs a job with a fixed delay between runs on one low-priority daemon thread, from
+// start() until stop(). A run that throws is logged and the job runs again next period.
+public class BackgroundTask {
+    private static final BankLogger LOG = BankLogger.getLogger(BackgroundTask.class);
+
+    private final String name;
+    private final long periodMillis;
+    private final Runnable job;
+    private ScheduledExecutorService scheduler;
+
+    public BackgroundTask(String name, long periodMillis, Runnable job) {
+        this.name = name;
+        this.periodMillis = periodMillis;
+        this.job = job;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                job.run();
+            } catch (RuntimeException e) {
+                LOG.error("background.task.failed", e, "task", name);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
\ No newline at end of file
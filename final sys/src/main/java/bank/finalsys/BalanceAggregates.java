@@ -0,0 +1,74 @@
+package bank.finalsys;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Running balance sums and account counts per customer, branch and account type,
+// updated on every posting so dashboards read totals without scanning accounts
+public class BalanceAggregates {
+    private final Map<String, Totals> byCustomer = new ConcurrentHashMap<>();
+    private final Map<String, Totals> byBranch = new ConcurrentHashMap<>();
+    private final Map<String, Totals> byAccountType = new ConcurrentHashMap<>();
+    private final Totals bank = new Totals();
+
+    public void accountOpened(Account account) {
+        apply(account, account.getPostedBalance(), 1);
+    }
+
+    public void balanceChanged(Account account, double delta) {
+        if (delta != 0) {
+            apply(account, delta, 0);
+        }
+    }
+
+    public void accountClosed(Account account) {
+        apply(account, -account.getPostedBalance(), -1);
+    }
+
+    public void customerClosed(String customerId) {
+        byCustomer.remove(customerId);
+    }
+
+    public Totals getCustomerTotals(String customerId) {
+        return byCustomer.getOrDefault(customerId, Totals.EMPTY);
+    }
+
+    public Totals getBranchTotals(String branch) {
+        return byBranch.getOrDefault(branch, Totals.EMPTY);
+    }
+
+    public Totals getAccountTypeTotals(String accountType) {
+        return byAccountType.getOrDefault(accountType, Totals.EMPTY);
+    }
+
+    public Totals getBankTotals() {
+        return bank;
+    }
+
+    private void apply(Account account, double delta, int countDelta) {
+        byCustomer.computeIfAbsent(account.getCustomer().getCustomerId(), key -> new Totals()).add(delta, countDelta);
+        byBranch.computeIfAbsent(account.getBranch(), key -> new Totals()).add(delta, countDelta);
+        byAccountType.computeIfAbsent(account.getAccountType(), key -> new Totals()).add(delta, countDelta);
+        bank.add(delta, countDelta);
+    }
+
+    public static class Totals {
+        private static final Totals EMPTY = new Totals();
+
+        private double balance;
+        private long accountCount;
+
+        private synchronized void add(double delta, int countDelta) {
+            balance += delta;
+            accountCount += countDelta;
+        }
+
+        public synchronized double getBalance() { return balance; }
+        public synchronized long getAccountCount() { return accountCount; }
+
+        @Override
+        public synchronized String toString() {
+            return "Totals [Accounts: " + accountCount + ", Balance: BWP " + String.format("%.2f", balance) + "]";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,404 @@
+package bank.finalsys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+// Headless entry point for scripted and scheduled jobs. It drives BankService
+// directly and never touches JavaFX, so it runs from the plain classpath on a
+// server without a display, against the data files in the working directory:
+//   java -cp target/classes bank.finalsys.BankCli balance ACC1001
+//   java -cp target/classes bank.finalsys.BankCli batch commands.txt
+// Exit status is 0 on success, 1 when a command fails and 2 on a usage error.
+public class BankCli {
+    private final BankService bankService;
+    private final PrintStream out;
+
+    public BankCli(BankService bankService, PrintStream out) {
+        this.bankService = bankService;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].equals("help")) {
+            printUsage(System.out);
+            System.exit(args.length == 0 ? 2 : 0);
+        }
+        // Only warnings go to the console unless a level was asked for
+        if (System.getProperty("bank.log.level") == null) {
+            BankLogger.setLevel(BankLogger.Level.WARN);
+        }
+        BankCli cli = new BankCli(new BankService(), System.out);
+        System.exit(cli.execute(args));
+    }
+
+    public int execute(String[] args) {
+        try {
+            run(args);
+            return 0;
+        } catch (UsageException | DateTimeException e) {
+            System.err.println("Usage error: " + e.getMessage());
+            return 2;
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void run(String[] args) throws IOException {
+        switch (args[0]) {
+            case "balance":
+                requireArgs(args, 2);
+                Account account = requireAccount(args[1]);
+                out.println(account.getAccountNumber() + " " + account.getAccountType() + " " +
+                        format(account.getBalance()));
+                break;
+            case "deposit":
+                requireArgs(args, 3);
+                printPosting(bankService.deposit(optional(args, 3), args[1], parseAmount(args[2])));
+                break;
+            case "withdraw":
+                requireArgs(args, 3);
+                printPosting(bankService.withdraw(optional(args, 3), args[1], parseAmount(args[2])));
+                break;
+            case "transfer":
+                requireArgs(args, 4);
+                printPosting(bankService.transfer(optional(args, 4), args[1], args[2], parseAmount(args[3])));
+                break;
+            case "close-account":
+                requireArgs(args, 2);
+                bankService.closeAccount(args[1]);
+                out.println("Closed account " + args[1]);
+                break;
+            case "close-customer":
+                requireArgs(args, 2);
+                bankService.closeCustomer(args[1]);
+                out.println("Closed customer " + args[1]);
+                break;
+            case "compact":
+                out.println("Removed " + bankService.compactClosedRecords() + " expired tombstones");
+                break;
+            case "interest":
+                bankService.processMonthlyInterest();
+                out.println("Accrued interest posted for " + bankService.getAllAccounts().size() + " accounts");
+                break;
+            case "statements":
+                requireArgs(args, 2);
+                int workers = args.length > 2 ? parseCount(args[2]) : Runtime.getRuntime().availableProcessors();
+                out.println(bankService.generateMonthlyStatements(YearMonth.parse(args[1]), workers));
+                break;
+            case "totals":
+                out.println("Bank: " + bankService.getBankTotals());
+                break;
+            case "import":
+                // import <csv> [rejects file] [workers]
+                requireArgs(args, 2);
+                Path csv = Paths.get(args[1]);
+                Path rejects = args.length > 2 ? Paths.get(args[2]) : Paths.get(args[1] + ".rejects.csv");
+                int importWorkers = args.length > 3 ? parseCount(args[3]) : Runtime.getRuntime().availableProcessors();
+                BulkImporter.Report report = bankService.importCustomers(csv, rejects, importWorkers);
+                out.println(report);
+                if (report.getRejectedCount() > 0) {
+                    out.println("Rejected rows written to " + rejects);
+                }
+                break;
+            case "export":
+                runExport(args);
+                break;
+            case "query":
+                for (Account match : bankService.findAccounts(parseQuery(args))) {
+                    out.println(match.getAccountNumber() + " " + match.getAccountType() + " " + match.getBranch() + " " +
+                            match.getCustomer().getCustomerId() + " " + format(match.getPostedBalance()));
+                }
+                break;
+            case "top":
+                runTop(args);
+                break;
+            case "archive":
+                out.println("Archived " + bankService.archiveClosedPeriods() + " postings");
+                for (TransactionArchive.Segment segment : bankService.getArchiveSegments()) {
+                    out.println("  " + segment);
+                }
+                break;
+            case "history":
+                // history <account> <from yyyy-MM-dd> [to yyyy-MM-dd, exclusive]
+                requireArgs(args, 3);
+                ZoneId zone = ZoneId.systemDefault();
+                long from = LocalDate.parse(args[2]).atStartOfDay(zone).toInstant().toEpochMilli();
+                long to = args.length > 3 ? LocalDate.parse(args[3]).atStartOfDay(zone).toInstant().toEpochMilli() : Long.MAX_VALUE;
+                for (Transaction transaction : bankService.getTransactionHistory(args[1], from, to)) {
+                    out.println(Instant.ofEpochMilli(transaction.getTimestamp()).atZone(zone).toLocalDateTime() + " " + transaction);
+                }
+                break;
+            case "rules":
+                bankService.getWithdrawalRuleHits().forEach((rule, hits) -> out.println(rule + ": " + hits + " declined"));
+                break;
+            case "standing-orders":
+                runStandingOrders(args);
+                break;
+            case "batch":
+                requireArgs(args, 2);
+                runBatch(args[1]);
+                break;
+            default:
+                throw new UsageException("Unknown command '" + args[0] + "'");
+        }
+    }
+
+    private void runStandingOrders(String[] args) {
+        String action = args.length > 1 ? args[1] : "list";
+        switch (action) {
+            case "list":
+                for (StandingOrder order : bankService.getStandingOrders()) {
+                    out.println(order);
+                }
+                break;
+            case "create":
+                // standing-orders create <from|-> <to> <amount> <DAILY|WEEKLY|MONTHLY> <first due yyyy-MM-dd>
+                requireArgs(args, 7);
+                long firstDue = LocalDate.parse(args[6]).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                StandingOrder order = bankService.createStandingOrder(args[2].equals("-") ? null : args[2], args[3],
+                        parseAmount(args[4]), StandingOrder.Frequency.valueOf(args[5].toUpperCase()), firstDue);
+                out.println("Created " + order);
+                break;
+            case "cancel":
+                requireArgs(args, 3);
+                if (!bankService.cancelStandingOrder(args[2])) {
+                    throw new IllegalArgumentException("Standing order not found");
+                }
+                out.println("Cancelled " + args[2]);
+                break;
+            case "run":
+                out.println("Executed " + bankService.runDueStandingOrders() + " due standing order payments");
+                break;
+            default:
+                throw new UsageException("Unknown standing-orders action '" + action + "'");
+        }
+    }
+
+    // export <customers|accounts> <csv|jsonl> <file|-> [--branch <name>] [--type <type>]
+    private void runExport(String[] args) throws IOException {
+        requireArgs(args, 4);
+        DataExporter.Dataset dataset;
+        DataExporter.Format format;
+        try {
+            dataset = DataExporter.Dataset.valueOf(args[1].toUpperCase());
+            format = DataExporter.Format.valueOf(args[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("Unknown dataset or format: " + args[1] + " " + args[2]);
+        }
+        String branch = null;
+        String accountType = null;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].equals("--branch") && i + 1 < args.length) {
+                branch = args[++i];
+            } else if (args[i].equals("--type") && i + 1 < args.length) {
+                accountType = args[++i];
+            } else {
+                throw new UsageException("Unknown export option '" + args[i] + "'");
+            }
+        }
+        if (args[3].equals("-")) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            DataExporter.Report report = bankService.exportData(dataset, format, branch, accountType, writer);
+            System.err.println(report);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)) {
+                out.println(bankService.exportData(dataset, format, branch, accountType, writer));
+            }
+        }
+    }
+
+    // query [--type <type>] [--branch <name>] [--min <balance>] [--max <balance>] [--limit <n>]
+    private static AccountQuery parseQuery(String[] args) {
+        AccountQuery query = new AccountQuery();
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new UsageException("Missing value for '" + args[i] + "'");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--type": query.type(value); break;
+                case "--branch": query.branch(value); break;
+                case "--min": query.minBalance(parseAmount(value)); break;
+                case "--max": query.maxBalance(parseAmount(value)); break;
+                case "--limit": query.limit(parseCount(value)); break;
+                default: throw new UsageException("Unknown query option '" + args[i] + "'");
+            }
+        }
+        return query;
+    }
+
+    // top <accounts|customers> [--branch <name>] [--type <type>] [--limit <n>]
+    private void runTop(String[] args) {
+        requireArgs(args, 2);
+        String branch = null;
+        String accountType = null;
+        int limit = 10;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--branch") && i + 1 < args.length) {
+                branch = args[++i];
+            } else if (args[i].equals("--type") && i + 1 < args.length) {
+                accountType = args[++i];
+            } else if (args[i].equals("--limit") && i + 1 < args.length) {
+                limit = parseCount(args[++i]);
+            } else {
+                throw new UsageException("Unknown top option '" + args[i] + "'");
+            }
+        }
+        if (args[1].equals("accounts")) {
+            int rank = 1;
+            for (Account account : bankService.getTopAccounts(branch, accountType, limit)) {
+                out.println(rank++ + ". " + account.getAccountNumber() + " " + account.getAccountType() + " " +
+                        account.getBranch() + " " + account.getCustomer().getCustomerId() + " " +
+                        format(account.getPostedBalance()));
+            }
+        } else if (args[1].equals("customers")) {
+            if (branch != null || accountType != null) {
+                throw new UsageException("Customers are ranked across all branches and account types");
+            }
+            int rank = 1;
+            for (BankCustomer customer : bankService.getTopCustomers(limit)) {
+                out.println(rank++ + ". " + customer.getCustomerId() + " " + customer.getFirstName() + " " +
+                        customer.getSurname() + " " + format(bankService.getCustomerTotals(customer.getCustomerId()).getBalance()));
+            }
+        } else {
+            throw new UsageException("Unknown ranking '" + args[1] + "'");
+        }
+    }
+
+    // One command per line; blank lines and lines starting with # are skipped. "-" reads stdin.
+    private void runBatch(String fileName) throws IOException {
+        int failed = 0;
+        int executed = 0;
+        try (BufferedReader reader = fileName.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] args = trimmed.split("\\s+");
+                if (args[0].equals("batch")) {
+                    throw new UsageException("Nested batch on line " + lineNumber);
+                }
+                executed++;
+                if (execute(args) != 0) {
+                    failed++;
+                    System.err.println("  at line " + lineNumber + ": " + trimmed);
+                }
+            }
+        }
+        out.println("Batch complete: " + executed + " commands, " + failed + " failed");
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " batch commands failed");
+        }
+    }
+
+    private void printPosting(Transaction transaction) {
+        out.println(transaction.getType() + " " + format(transaction.getAmount()) + " on " +
+                transaction.getAccountNumber() + ", balance " + format(transaction.getBalanceAfter()) +
+                (transaction.getCounterpartyAccount() != null
+                        ? "; " + transaction.getCounterpartyAccount() + " balance " +
+                          format(transaction.getCounterpartyBalanceAfter())
+                        : ""));
+    }
+
+    private Account requireAccount(String accountNumber) {
+        Account account = bankService.findAccount(accountNumber);
+        if (account == null) {
+            throw new IllegalArgumentException("Account not found");
+        }
+        return account;
+    }
+
+    private static String optional(String[] args, int index) {
+        return args.length > index ? args[index] : null;
+    }
+
+    private static double parseAmount(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new UsageException("Invalid amount '" + value + "'");
+        }
+    }
+
+    // Worker counts and limits
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new UsageException("Invalid count '" + value + "'");
+    }
+
+    private static void requireArgs(String[] args, int count) {
+        if (args.length < count) {
+            throw new UsageException("'" + args[0] + "' needs " + (count - 1) + " arguments, got " +
+                    Arrays.toString(Arrays.copyOfRange(args, 1, args.length)));
+        }
+    }
+
+    private static String format(double amount) {
+        return "BWP " + String.format("%.2f", amount);
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: BankCli <command> [arguments]");
+        out.println("  balance <account>");
+        out.println("  deposit <account> <amount> [request id]");
+        out.println("  withdraw <account> <amount> [request id]");
+        out.println("  transfer <from> <to> <amount> [request id]");
+        out.println("  close-account <account>       close an empty account");
+        out.println("  close-customer <username>     close a customer and their empty accounts");
+        out.println("  compact                       drop tombstones of records closed over a day ago");
+        out.println("  interest                      post accrued interest on every account");
+        out.println("  statements <yyyy-MM> [workers]");
+        out.println("  history <account> <from yyyy-MM-dd> [to yyyy-MM-dd]");
+        out.println("  archive                       move closed months into compressed archive segments");
+        out.println("  totals");
+        out.println("  top <accounts|customers> [--branch <name>] [--type <type>] [--limit <n>]");
+        out.println("  query [--type <type>] [--branch <name>] [--min <balance>] [--max <balance>] [--limit <n>]");
+        out.println("  import <csv> [rejects file] [workers]");
+        out.println("  export <customers|accounts> <csv|jsonl> <file|-> [--branch <name>] [--type <type>]");
+        out.println("  rules                         list withdrawal rules with their decline counts");
+        out.println("  standing-orders [list | run | cancel <id> |");
+        out.println("                   create <from|-> <to> <amount> <DAILY|WEEKLY|MONTHLY> <yyyy-MM-dd>]");
+        out.println("  batch <file|->                run one command per line");
+    }
+
+    private static class UsageException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+}
\ No newline at end of file
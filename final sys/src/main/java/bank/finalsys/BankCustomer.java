@@ -2,13 +2,18 @@ package bank.finalsys;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class BankCustomer extends User {
     private String customerId;
     private String firstName;
     private String surname;
     private String address;
-    private List<Account> accounts;
+    // Opened, closed and merged in from postings threads while statements and views read it;
+    // a customer holds a handful of accounts, so copying on each change is cheap
+    private final List<Account> accounts = new CopyOnWriteArrayList<>();
+    // Time the customer was closed, 0 while open
+    private volatile long closedAt;
 
     public BankCustomer(String username, String password, String customerId,
                         String firstName, String surname, String address) {
@@ -17,7 +22,6 @@ public class BankCustomer extends User {
         this.firstName = firstName;
         this.surname = surname;
         this.address = address;
-        this.accounts = new ArrayList<>();
     }
 
     public BankCustomer(String username, String password, String customerId,
@@ -27,13 +31,16 @@ public class BankCustomer extends User {
         this.firstName = firstName;
         this.surname = surname;
         this.address = address;
-        this.accounts = new ArrayList<>();
     }
 
     public void addAccount(Account account) {
         accounts.add(account);
     }
 
+    public void removeAccount(Account account) {
+        accounts.remove(account);
+    }
+
     public String getCustomerId() { return customerId; }
     public String getFirstName() { return firstName; }
     public String getSurname() { return surname; }
@@ -44,6 +51,11 @@ public class BankCustomer extends User {
     public void setSurname(String surname) { this.surname = surname; }
     public void setAddress(String address) { this.address = address; }
 
+    public boolean isClosed() { return closedAt != 0; }
+    public long getClosedAt() { return closedAt; }
+
+    void markClosed(long closedAt) { this.closedAt = closedAt; }
+
     public String getFullName() {
         return firstName + " " + surname;
     }
@@ -56,13 +68,23 @@ public class BankCustomer extends User {
     @Override
     public String toFileString() {
         return getUsername() + "|" + getPassword() + "|" + getRole().toString() + "|" +
-                customerId + "|" + firstName + "|" + surname + "|" + address;
+                customerId + "|" + firstName + "|" + surname + "|" + address + (closedAt != 0 ? "|" + closedAt : "");
+    }
+
+    // Read without splitting the line; null if the record is too short to have one
+    static String customerIdOf(String line) {
+        return AccountRecord.field(line, 3);
     }
 
     public static BankCustomer fromFileString(String line) {
         String[] parts = line.split("\\|");
         if (parts.length >= 7) {
-            return new BankCustomer(parts[0], parts[1], parts[3], parts[4], parts[5], parts[6], UserRole.valueOf(parts[2]));
+            BankCustomer customer = new BankCustomer(parts[0], parts[1], parts[3], parts[4], parts[5], parts[6],
+                    UserRole.valueOf(parts[2]));
+            if (parts.length >= 8) {
+                customer.markClosed(Long.parseLong(parts[7]));
+            }
+            return customer;
         }
         return null;
     }
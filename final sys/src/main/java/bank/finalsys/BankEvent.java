@@ -0,0 +1,137 @@
+package bank.finalsys;
+
+// Change notifications published by BankService. Events with the same key that are
+// still waiting to be dispatched are coalesced into one, so a listener sees the
+// latest state of each account or customer rather than every intermediate step.
+public abstract class BankEvent {
+    private final long timestamp;
+
+    protected BankEvent(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getTimestamp() { return timestamp; }
+
+    abstract String coalescingKey();
+
+    // Combines this pending event with a newer one for the same key
+    BankEvent coalesce(BankEvent newer) {
+        return newer;
+    }
+
+    public static final class AccountOpened extends BankEvent {
+        private final String accountNumber;
+        private final String customerId;
+
+        public AccountOpened(long timestamp, String accountNumber, String customerId) {
+            super(timestamp);
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public String getCustomerId() { return customerId; }
+
+        @Override
+        String coalescingKey() {
+            return "OPENED|" + accountNumber;
+        }
+    }
+
+    public static final class AccountClosed extends BankEvent {
+        private final String accountNumber;
+        private final String customerId;
+
+        public AccountClosed(long timestamp, String accountNumber, String customerId) {
+            super(timestamp);
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public String getCustomerId() { return customerId; }
+
+        @Override
+        String coalescingKey() {
+            return "CLOSED|" + accountNumber;
+        }
+    }
+
+    public static final class BalanceChanged extends BankEvent {
+        private final String accountNumber;
+        private final String customerId;
+        private final double change;
+        private final double balance;
+
+        public BalanceChanged(long timestamp, String accountNumber, String customerId, double change, double balance) {
+            super(timestamp);
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+            this.change = change;
+            this.balance = balance;
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public String getCustomerId() { return customerId; }
+        public double getChange() { return change; }
+        public double getBalance() { return balance; }
+
+        @Override
+        String coalescingKey() {
+            return "BALANCE|" + accountNumber;
+        }
+
+        @Override
+        BankEvent coalesce(BankEvent newer) {
+            BalanceChanged next = (BalanceChanged) newer;
+            return new BalanceChanged(next.getTimestamp(), accountNumber, customerId, change + next.change, next.balance);
+        }
+    }
+
+    public static final class CustomerUpdated extends BankEvent {
+        private final String customerId;
+
+        public CustomerUpdated(long timestamp, String customerId) {
+            super(timestamp);
+            this.customerId = customerId;
+        }
+
+        public String getCustomerId() { return customerId; }
+
+        @Override
+        String coalescingKey() {
+            return "CUSTOMER|" + customerId;
+        }
+    }
+
+    public static final class InterestPosted extends BankEvent {
+        private final String accountNumber;
+        private final String customerId;
+        private final double interest;
+        private final double balance;
+
+        public InterestPosted(long timestamp, String accountNumber, String customerId, double interest, double balance) {
+            super(timestamp);
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+            this.interest = interest;
+            this.balance = balance;
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public String getCustomerId() { return customerId; }
+        public double getInterest() { return interest; }
+        public double getBalance() { return balance; }
+
+        @Override
+        String coalescingKey() {
+            return "INTEREST|" + accountNumber;
+        }
+
+        @Override
+        BankEvent coalesce(BankEvent newer) {
+            InterestPosted next = (InterestPosted) newer;
+            return new InterestPosted(next.getTimestamp(), accountNumber, customerId, interest + next.interest, next.balance);
+        }
+    }
+}
\ No newline at end of file
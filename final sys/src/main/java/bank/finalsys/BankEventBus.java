@@ -0,0 +1,102 @@
+package bank.finalsys;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Delivers BankEvents to subscribers on a single daemon thread. Publishing only
+// records the event: pending events are coalesced by key and dispatched in
+// batches, so a burst of postings on one account reaches listeners as one event.
+// Listeners that touch JavaFX controls must hop to the FX thread themselves.
+public class BankEventBus {
+    private static final BankLogger LOG = BankLogger.getLogger(BankEventBus.class);
+
+    private static final long COALESCE_MILLIS = 50;
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, BankEvent> pending = new LinkedHashMap<>();
+    private Thread dispatcher;
+
+    public <T extends BankEvent> Subscription<T> subscribe(Class<T> type, Consumer<? super T> listener) {
+        Subscription<T> subscription = new Subscription<>(type, listener);
+        subscriptions.add(subscription);
+        startDispatcher();
+        return subscription;
+    }
+
+    public void publish(BankEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            String key = event.coalescingKey();
+            BankEvent earlier = pending.remove(key);
+            // Re-inserted so the coalesced event is dispatched in the order of its latest change
+            pending.put(key, earlier == null ? event : earlier.coalesce(event));
+            notifyAll();
+        }
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher != null) {
+            return;
+        }
+        dispatcher = new Thread(this::dispatchLoop, "bank-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            List<BankEvent> batch;
+            try {
+                synchronized (this) {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                }
+                // Let a burst of changes settle before taking the batch
+                Thread.sleep(COALESCE_MILLIS);
+                synchronized (this) {
+                    batch = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (BankEvent event : batch) {
+                for (Subscription<?> subscription : subscriptions) {
+                    subscription.deliver(event);
+                }
+            }
+        }
+    }
+
+    public final class Subscription<T extends BankEvent> {
+        private final Class<T> type;
+        private final Consumer<? super T> listener;
+
+        private Subscription(Class<T> type, Consumer<? super T> listener) {
+            this.type = type;
+            this.listener = listener;
+        }
+
+        private void deliver(BankEvent event) {
+            if (!type.isInstance(event)) {
+                return;
+            }
+            try {
+                listener.accept(type.cast(event));
+            } catch (RuntimeException e) {
+                LOG.error("event.listener.failed", e, "event", event.getClass().getSimpleName());
+            }
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package bank.finalsys;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Leveled logger writing "event key=value ..." lines. Formatted lines are handed
+// to a background appender thread, so callers never block on console output.
+// Set -Dbank.log.level=DEBUG to see per-record diagnostics; they are skipped otherwise.
+public final class BankLogger {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static volatile Level threshold = parseLevel(System.getProperty("bank.log.level"));
+    private static final Thread APPENDER = startAppender();
+
+    private final String name;
+
+    private BankLogger(String name) {
+        this.name = name;
+    }
+
+    public static BankLogger getLogger(Class<?> type) {
+        return new BankLogger(type.getSimpleName());
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static Level getLevel() {
+        return threshold;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String event, Object... fields) {
+        log(Level.DEBUG, event, null, fields);
+    }
+
+    public void debug(Supplier<String> message) {
+        if (isDebugEnabled()) {
+            log(Level.DEBUG, message.get(), null);
+        }
+    }
+
+    public void info(String event, Object... fields) {
+        log(Level.INFO, event, null, fields);
+    }
+
+    public void warn(String event, Object... fields) {
+        log(Level.WARN, event, null, fields);
+    }
+
+    public void error(String event, Throwable error, Object... fields) {
+        log(Level.ERROR, event, error, fields);
+    }
+
+    private void log(Level level, String event, Throwable error, Object... fields) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(LocalDateTime.now()).append(' ')
+                .append(String.format("%-5s", level)).append(' ')
+                .append(name).append(' ')
+                .append(event);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            sb.append(' ').append(fields[i]).append('=');
+            appendValue(sb, fields[i + 1]);
+        }
+        if (error != null) {
+            sb.append(" error=");
+            appendValue(sb, error.toString());
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            sb.append(System.lineSeparator()).append(trace.toString().trim());
+        }
+        if (!QUEUE.offer(sb.toString())) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        String text = String.valueOf(value);
+        if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('=') >= 0) {
+            sb.append('"').append(text.replace("\"", "\\\"")).append('"');
+        } else {
+            sb.append(text);
+        }
+    }
+
+    private static Level parseLevel(String value) {
+        if (value != null) {
+            try {
+                return Level.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // Fall back to the default level
+            }
+        }
+        return Level.INFO;
+    }
+
+    private static Thread startAppender() {
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        Thread thread = new Thread(() -> {
+            List<String> batch = new ArrayList<>();
+            while (true) {
+                try {
+                    batch.add(QUEUE.take());
+                    QUEUE.drainTo(batch);
+                    writeBatch(out, batch);
+                } catch (InterruptedException e) {
+                    QUEUE.drainTo(batch);
+                    writeBatch(out, batch);
+                    return;
+                }
+            }
+        }, "bank-log-appender");
+        thread.setDaemon(true);
+        thread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            List<String> remaining = new ArrayList<>();
+            QUEUE.drainTo(remaining);
+            writeBatch(out, remaining);
+        }, "bank-log-flush"));
+        return thread;
+    }
+
+    private static synchronized void writeBatch(BufferedWriter out, List<String> batch) {
+        try {
+            long dropped = DROPPED.getAndSet(0);
+            if (dropped > 0) {
+                out.write("WARN  BankLogger log.dropped count=" + dropped);
+                out.newLine();
+            }
+            for (String line : batch) {
+                out.write(line);
+                out.newLine();
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Nowhere left to report logging failures
+        }
+        batch.clear();
+    }
+}
\ No newline at end of file
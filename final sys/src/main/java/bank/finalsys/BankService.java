@@ -1,61 +1,178 @@
 package bank.finalsys;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class BankService {
+    private static final BankLogger LOG = BankLogger.getLogger(BankService.class);
+
     private List<BankCustomer> customers;
     private List<Account> accounts;
     private List<User> users;
-    private int accountCounter;
-    private int customerCounter;
+    private final Path dataDirectory;
+    // Every username in users, guarded by the service lock like the list itself
+    private BloomFilter usernameFilter = new BloomFilter(USERNAME_FILTER_MIN_CAPACITY, USERNAME_FILTER_FALSE_POSITIVE_RATE);
+    private final Map<String, Account> accountsByNumber = new ConcurrentHashMap<>();
+    private final IdAllocator accountIds;
+    private final IdAllocator customerIds;
+    private final TransactionArchive archive;
+    private final TransactionLog transactionLog;
+    private final BackgroundTask interestTrickle;
+    private final BackgroundTask compactor;
+    private final BalanceAggregates aggregates;
+    private final AccountIndex accountIndex = new AccountIndex();
+    private final TopBalances topBalances;
+    private final IdempotencyCache idempotencyCache;
+    private final WithdrawalRules withdrawalRules;
+    private final StandingOrderScheduler standingOrders;
+    private final ReplicationPublisher replication;
+    private final BankEventBus events = new BankEventBus();
+    private int interestCursor;
+    // Set once trickled interest is on the accounts, cleared when a save takes their snapshot
+    private volatile boolean interestUnsaved;
+    private volatile long lastWriteMillis = System.currentTimeMillis();
+    private final Object saveLock = new Object();
+    private final AtomicLong saveRequests = new AtomicLong();
+    private long savesCompleted;
+    // Generation of the data directory last merged or written by this instance, guarded by saveLock
+    private long syncedGeneration = -1;
+    // Customers edited here since the last save; their fields are not refreshed from disk
+    private final Set<String> changedCustomers = new HashSet<>();
 
     private static final String CUSTOMERS_FILE = "customers.txt";
     private static final String ACCOUNTS_FILE = "accounts.txt";
     private static final String USERS_FILE = "users.txt";
     private static final String TELLERS_FILE = "tellers.txt";
+    private static final String TRANSACTIONS_FILE = "transactions.txt";
+    private static final String IDS_FILE = "ids.txt";
+    private static final String LOCK_FILE = "bank.lock";
+    private static final String IDEMPOTENCY_FILE = "idempotency.txt";
+    private static final long IDEMPOTENCY_WINDOW_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String STATEMENTS_DIRECTORY = "statements";
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final int LOAD_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final int INTEREST_TRICKLE_BATCH = 500;
+    private static final long INTEREST_TRICKLE_PERIOD_MILLIS = 5000;
+    // Longest trickled interest waits for another posting to save it
+    private static final long INTEREST_SAVE_INTERVAL_MILLIS = 60_000;
+    private static final String STANDING_ORDERS_FILE = "standing_orders.txt";
+    private static final long STANDING_ORDER_TICK_MILLIS = 1000;
+    private static final String WITHDRAWAL_RULES_FILE = "withdrawal_rules.txt";
+    private static final long WITHDRAWAL_RULES_RELOAD_MILLIS = 1000;
+    private static final int IMPORT_BATCH_SIZE = 50000;
+    private static final int USERNAME_FILTER_MIN_CAPACITY = 1024;
+    private static final double USERNAME_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    // Every writer merges the data files before it saves, so a day is ample for a closure to reach them
+    private static final long TOMBSTONE_RETENTION_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long COMPACTION_PERIOD_MILLIS = 10L * 60 * 1000;
 
     public BankService() {
+        this(Paths.get(""));
+    }
+
+    // Every data file, lock and folder is resolved against dataDirectory
+    public BankService(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
         this.customers = new ArrayList<>();
         this.accounts = new ArrayList<>();
         this.users = new ArrayList<>();
-        this.accountCounter = 1000;
-        this.customerCounter = 1000;
+        this.accountIds = new IdAllocator(file(IDS_FILE), "ACC", this::firstFreeAccountNumber);
+        this.customerIds = new IdAllocator(file(IDS_FILE), "CUST", this::firstFreeCustomerNumber);
+        this.archive = new TransactionArchive(dataDirectory.resolve(ARCHIVE_DIRECTORY));
+        this.transactionLog = new TransactionLog(file(TRANSACTIONS_FILE), archive);
+        this.aggregates = new BalanceAggregates();
+        this.topBalances = new TopBalances(aggregates);
+        this.idempotencyCache = new IdempotencyCache(IDEMPOTENCY_WINDOW_MILLIS);
+        this.withdrawalRules = new WithdrawalRules(file(WITHDRAWAL_RULES_FILE), WITHDRAWAL_RULES_RELOAD_MILLIS,
+                transactionLog, this::findAccount);
+        this.replication = ReplicationPublisher.fromSystemProperties(file(TRANSACTIONS_FILE), archive);
+        this.interestTrickle = new BackgroundTask("interest-trickle", INTEREST_TRICKLE_PERIOD_MILLIS, this::trickleInterest);
+        this.compactor = new BackgroundTask("tombstone-compactor", COMPACTION_PERIOD_MILLIS, this::compactClosedRecords);
         loadData();
+        withdrawalRules.seedWindows(System.currentTimeMillis());
+        this.standingOrders = new StandingOrderScheduler(this, file(STANDING_ORDERS_FILE), file(IDS_FILE), STANDING_ORDER_TICK_MILLIS);
 
         if (users.stream().noneMatch(u -> u.getRole() == UserRole.TELLER)) {
             BankTeller defaultTeller = new BankTeller("teller", "password", "EMP001", "Default Teller");
-            users.add(defaultTeller);
+            addUser(defaultTeller);
             saveData();
         }
     }
 
-    public User authenticateUser(String username, String password) {
+    public synchronized User authenticateUser(String username, String password) {
+        if (username == null || !usernameFilter.mightContain(username)) {
+            return null;
+        }
         for (User user : users) {
-            if (user.authenticate(username, password)) {
+            if (user.authenticate(username, password) && !isClosed(user)) {
                 return user;
             }
         }
         return null;
     }
 
+    private static boolean isClosed(User user) {
+        return user instanceof BankCustomer && ((BankCustomer) user).isClosed();
+    }
+
+    // Structural changes hold the service lock; saveData() is always called after releasing it
     public BankCustomer createCustomer(String username, String password, String firstName,
                                        String surname, String address) {
-        if (users.stream().anyMatch(u -> u.getUsername().equals(username))) {
-            throw new IllegalArgumentException("Username already exists");
-        }
+        // Allocated outside the service lock: a block reservation may need to read the customer list
+        String customerId = customerIds.nextId();
+        BankCustomer newCustomer;
+        synchronized (this) {
+            // The list is only scanned when the filter cannot rule the name out
+            if (usernameFilter.mightContain(username)
+                    && users.stream().anyMatch(u -> u.getUsername().equals(username) && !isClosed(u))) {
+                throw new IllegalArgumentException("Username already exists");
+            }
 
-        String customerId = "CUST" + (customerCounter++);
-        BankCustomer newCustomer = new BankCustomer(username, password, customerId, firstName, surname, address);
-        customers.add(newCustomer);
-        users.add(newCustomer);
+            newCustomer = new BankCustomer(username, password, customerId, firstName, surname, address);
+            customers.add(newCustomer);
+            addUser(newCustomer);
+            changedCustomers.add(customerId);
+        }
+        events.publish(new BankEvent.CustomerUpdated(System.currentTimeMillis(), customerId));
         saveData();
         return newCustomer;
     }
 
-    public BankCustomer findCustomerByUsername(String username) {
+    // Callers hold the service lock
+    private void addUser(User user) {
+        users.add(user);
+        usernameFilter.add(user.getUsername());
+        if (usernameFilter.isFull()) {
+            rebuildUsernameFilter();
+        }
+    }
+
+    // Sized at twice the current user count so it absorbs growth before the next rebuild
+    private void rebuildUsernameFilter() {
+        BloomFilter filter = new BloomFilter(Math.max(USERNAME_FILTER_MIN_CAPACITY, users.size() * 2),
+                USERNAME_FILTER_FALSE_POSITIVE_RATE);
+        for (User user : users) {
+            filter.add(user.getUsername());
+        }
+        usernameFilter = filter;
+    }
+
+    public synchronized BankCustomer findCustomerByUsername(String username) {
         for (User user : users) {
-            if (user instanceof BankCustomer && user.getUsername().equals(username)) {
+            if (user instanceof BankCustomer && user.getUsername().equals(username) && !isClosed(user)) {
                 return (BankCustomer) user;
             }
         }
@@ -63,11 +180,18 @@ public class BankService {
     }
 
     public void updateCustomer(String username, String firstName, String surname, String address) {
-        BankCustomer customer = findCustomerByUsername(username);
+        BankCustomer customer;
+        synchronized (this) {
+            customer = findCustomerByUsername(username);
+            if (customer != null) {
+                if (firstName != null && !firstName.isEmpty()) customer.setFirstName(firstName);
+                if (surname != null && !surname.isEmpty()) customer.setSurname(surname);
+                if (address != null && !address.isEmpty()) customer.setAddress(address);
+                changedCustomers.add(customer.getCustomerId());
+            }
+        }
         if (customer != null) {
-            if (firstName != null && !firstName.isEmpty()) customer.setFirstName(firstName);
-            if (surname != null && !surname.isEmpty()) customer.setSurname(surname);
-            if (address != null && !address.isEmpty()) customer.setAddress(address);
+            events.publish(new BankEvent.CustomerUpdated(System.currentTimeMillis(), customer.getCustomerId()));
             saveData();
         }
     }
@@ -96,275 +220,1117 @@ public class BankService {
                 throw new IllegalArgumentException("Invalid account type");
         }
 
-        customer.addAccount(account);
-        accounts.add(account);
+        synchronized (this) {
+            if (customer.isClosed()) {
+                throw new IllegalArgumentException("Customer is closed");
+            }
+            customer.addAccount(account);
+            accounts.add(account);
+            accountsByNumber.put(accountNumber, account);
+        }
+        accountOpened(account);
         saveData();
         return account;
     }
 
-    public void deposit(String accountNumber, double amount) {
+    // The account leaves every lookup, index and total at once; its record stays on disk
+    // as a tombstone until compacted. Only the account's own lock is taken, so postings
+    // to other accounts carry on. A posting waiting on this account fails once it is closed.
+    public void closeAccount(String accountNumber) {
         Account account = findAccount(accountNumber);
-        if (account != null) {
-            account.deposit(amount);
-            saveData();
-        } else {
+        if (account == null) {
             throw new IllegalArgumentException("Account not found");
         }
+        closeAccount(account, System.currentTimeMillis());
+        saveData();
+    }
+
+    // Closes every account of the customer, all of which must be empty, then the customer.
+    // The username becomes free for a new customer.
+    public void closeCustomer(String username) {
+        BankCustomer customer = findCustomerByUsername(username);
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer not found");
+        }
+        List<Account> open = customer.getAccounts();
+        for (Account account : open) {
+            if (account.getBalance() != 0) {
+                throw new IllegalArgumentException("Account " + account.getAccountNumber() + " still holds a balance");
+            }
+        }
+        long now = System.currentTimeMillis();
+        try {
+            for (Account account : open) {
+                closeAccount(account, now);
+            }
+            synchronized (this) {
+                // An account may have been opened meanwhile
+                if (!customer.getAccounts().isEmpty()) {
+                    throw new IllegalArgumentException("Customer still has open accounts");
+                }
+                customer.markClosed(now);
+                changedCustomers.add(customer.getCustomerId());
+            }
+            customerClosed(customer);
+            LOG.info("customer.closed", "customer", customer.getCustomerId(), "accounts", open.size());
+        } finally {
+            saveData();
+        }
+    }
+
+    private void closeAccount(Account account, long now) {
+        synchronized (account) {
+            if (account.isClosed()) {
+                throw new IllegalArgumentException("Account is already closed");
+            }
+            // Includes interest accrued but not yet posted
+            if (account.getBalance() != 0) {
+                throw new IllegalArgumentException("Account balance must be zero to close");
+            }
+            tombstone(account, now);
+        }
+        accountClosed(account);
+        standingOrders.cancelForAccount(account.getAccountNumber());
+        LOG.info("account.closed", "account", account.getAccountNumber(), "customer", account.getCustomer().getCustomerId());
+    }
+
+    // Adds a batch of validated import rows under one lock and with one save. Returns the
+    // number of customers and accounts created; rows that cannot be added get a reject reason.
+    int[] importBatch(List<BulkImporter.Row> rows) {
+        // Allocated outside the service lock, as in createCustomer; unused IDs are skipped
+        Deque<String> newCustomerIds = new ArrayDeque<>();
+        Deque<String> newAccountNumbers = new ArrayDeque<>();
+        for (BulkImporter.Row row : rows) {
+            if (row.owner == null) newCustomerIds.add(customerIds.nextId());
+            if (row.hasAccount()) newAccountNumbers.add(generateAccountNumber());
+        }
+
+        List<BankCustomer> created = new ArrayList<>();
+        List<Account> opened = new ArrayList<>();
+        synchronized (this) {
+            Set<String> taken = takenUsernames(rows);
+            for (BulkImporter.Row row : rows) {
+                BankCustomer customer;
+                if (row.owner == null) {
+                    String customerId = newCustomerIds.poll();
+                    if (taken.contains(row.username)) {
+                        row.rejectReason = "Username already exists";
+                        continue;
+                    }
+                    customer = new BankCustomer(row.username, row.password, customerId,
+                            row.firstName, row.surname, row.address);
+                } else {
+                    customer = row.owner.customer;
+                    if (customer == null) {
+                        row.rejectReason = "Customer on line " + row.owner.lineNumber + " was not imported";
+                        continue;
+                    }
+                }
+
+                Account account = null;
+                if (row.hasAccount()) {
+                    String accountNumber = newAccountNumbers.poll();
+                    try {
+                        account = createImportedAccount(row, accountNumber, customer);
+                    } catch (IllegalArgumentException e) {
+                        row.rejectReason = e.getMessage();
+                        continue;
+                    }
+                }
+                if (row.owner == null) {
+                    taken.add(row.username);
+                    customers.add(customer);
+                    addUser(customer);
+                    changedCustomers.add(customer.getCustomerId());
+                    row.customer = customer;
+                    created.add(customer);
+                }
+                if (account != null) {
+                    customer.addAccount(account);
+                    accounts.add(account);
+                    accountsByNumber.put(account.getAccountNumber(), account);
+                    opened.add(account);
+                }
+            }
+        }
+        for (Account account : opened) {
+            accountOpened(account);
+        }
+        long now = System.currentTimeMillis();
+        for (BankCustomer customer : created) {
+            events.publish(new BankEvent.CustomerUpdated(now, customer.getCustomerId()));
+        }
+        saveData();
+        return new int[] { created.size(), opened.size() };
+    }
+
+    private Account createImportedAccount(BulkImporter.Row row, String accountNumber, BankCustomer customer) {
+        switch (row.accountType) {
+            case "SAVINGS":
+                return new SavingsAccount(accountNumber, row.deposit, row.branch, customer);
+            case "INVESTMENT":
+                return new InvestmentAccount(accountNumber, row.deposit, row.branch, customer);
+            case "CHEQUE":
+                return new ChequeAccount(accountNumber, row.deposit, row.branch, customer, row.employer, row.companyAddress);
+            default:
+                throw new IllegalArgumentException("Invalid account type");
+        }
+    }
+
+    // Usernames of new-customer rows that already belong to a user. The list is scanned
+    // at most once, and only when the filter cannot rule every name out. Callers hold the lock.
+    private Set<String> takenUsernames(List<BulkImporter.Row> rows) {
+        Set<String> candidates = new HashSet<>();
+        for (BulkImporter.Row row : rows) {
+            if (row.owner == null && usernameFilter.mightContain(row.username)) {
+                candidates.add(row.username);
+            }
+        }
+        Set<String> taken = new HashSet<>();
+        if (!candidates.isEmpty()) {
+            for (User user : users) {
+                if (candidates.contains(user.getUsername()) && !isClosed(user)) {
+                    taken.add(user.getUsername());
+                }
+            }
+        }
+        return taken;
+    }
+
+    public BulkImporter.Report importCustomers(Path csv, Path rejectsFile, int workers) throws IOException {
+        return new BulkImporter(this, workers, IMPORT_BATCH_SIZE).importFile(csv, rejectsFile);
+    }
+
+    // Point-in-time export; postings carry on while it runs
+    public DataExporter.Report exportData(DataExporter.Dataset dataset, DataExporter.Format format,
+                                          String branch, String accountType, Writer out) throws IOException {
+        return new DataExporter(format, branch, accountType).export(dataset, getAllCustomers(), out);
+    }
+
+    public void deposit(String accountNumber, double amount) {
+        post(null, accountNumber, TransactionType.DEPOSIT, amount);
     }
 
     public void withdraw(String accountNumber, double amount) {
+        post(null, accountNumber, TransactionType.WITHDRAWAL, amount);
+    }
+
+    // Keyed postings: repeating a request ID within the window returns the original result
+    public Transaction deposit(String requestId, String accountNumber, double amount) {
+        return post(requestId, accountNumber, TransactionType.DEPOSIT, amount);
+    }
+
+    public Transaction withdraw(String requestId, String accountNumber, double amount) {
+        return post(requestId, accountNumber, TransactionType.WITHDRAWAL, amount);
+    }
+
+    public Transaction transfer(String fromAccountNumber, String toAccountNumber, double amount) {
+        return transfer(null, fromAccountNumber, toAccountNumber, amount);
+    }
+
+    // Moves money between two accounts as one journal record. Both accounts are locked
+    // in account-number order, so concurrent transfers in opposite directions cannot deadlock.
+    public Transaction transfer(String requestId, String fromAccountNumber, String toAccountNumber, double amount) {
+        Transaction result = applyTransfer(requestId, fromAccountNumber, toAccountNumber, amount);
+        saveData();
+        return result;
+    }
+
+    private Transaction applyTransfer(String requestId, String fromAccountNumber, String toAccountNumber, double amount) {
+        Account from = findAccount(fromAccountNumber);
+        Account to = findAccount(toAccountNumber);
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Account not found");
+        }
+        if (from == to) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Invalid transfer amount");
+        }
+        if (requestId != null) {
+            IdempotencyCache.validateRequestId(requestId);
+        }
+
+        Account first = from.getAccountNumber().compareTo(to.getAccountNumber()) < 0 ? from : to;
+        Account second = first == from ? to : from;
+        Transaction result;
+        List<Transaction> postings = new ArrayList<>();
+        synchronized (first) {
+            synchronized (second) {
+                long now = System.currentTimeMillis();
+                if (requestId != null) {
+                    Transaction original = findOriginal(requestId, fromAccountNumber, TransactionType.TRANSFER, amount, now);
+                    if (original != null) {
+                        return original;
+                    }
+                }
+                if (from.isClosed() || to.isClosed()) {
+                    throw new IllegalArgumentException("Account is closed");
+                }
+                long snapshot = Account.currentSnapshot();
+                from.preserveForSnapshot(snapshot);
+                to.preserveForSnapshot(snapshot);
+                try {
+                    postAccruedInterest(from, now, postings);
+                    postAccruedInterest(to, now, postings);
+                    withdrawalRules.check(from, amount, now);
+                    double fromBalance = from.getPostedBalance();
+                    try {
+                        from.withdraw(amount);
+                        to.deposit(amount);
+                    } catch (RuntimeException e) {
+                        from.setBalance(fromBalance);
+                        withdrawalRules.cancel(from, amount, now);
+                        throw e;
+                    }
+                    withdrawalRules.withdrawn(from, amount, now);
+                    balanceChanged(from, -amount);
+                    balanceChanged(to, amount);
+                    result = new Transaction(now, fromAccountNumber, TransactionType.TRANSFER, amount,
+                            from.getPostedBalance(), toAccountNumber, to.getPostedBalance());
+                    postings.add(result);
+                    if (requestId != null) {
+                        idempotencyCache.put(requestId, result);
+                    }
+                } finally {
+                    transactionLog.append(postings);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Transaction post(String requestId, String accountNumber, TransactionType type, double amount) {
+        Transaction result = applyPosting(requestId, accountNumber, type, amount);
+        saveData();
+        return result;
+    }
+
+    private Transaction applyPosting(String requestId, String accountNumber, TransactionType type, double amount) {
+        if (requestId != null) {
+            IdempotencyCache.validateRequestId(requestId);
+        }
         Account account = findAccount(accountNumber);
-        if (account != null) {
-            account.withdraw(amount);
-            saveData();
-        } else {
+        if (account == null) {
             throw new IllegalArgumentException("Account not found");
         }
+
+        Transaction result;
+        List<Transaction> postings = new ArrayList<>();
+        synchronized (account) {
+            long now = System.currentTimeMillis();
+            // Checked under the account lock so concurrent retries of one request post once
+            if (requestId != null) {
+                Transaction original = findOriginal(requestId, accountNumber, type, amount, now);
+                if (original != null) {
+                    return original;
+                }
+            }
+            if (account.isClosed()) {
+                throw new IllegalArgumentException("Account is closed");
+            }
+            account.preserveForSnapshot(Account.currentSnapshot());
+            try {
+                postAccruedInterest(account, now, postings);
+                if (type == TransactionType.DEPOSIT) {
+                    account.deposit(amount);
+                    balanceChanged(account, amount);
+                } else {
+                    withdrawalRules.check(account, amount, now);
+                    try {
+                        account.withdraw(amount);
+                    } catch (RuntimeException e) {
+                        withdrawalRules.cancel(account, amount, now);
+                        throw e;
+                    }
+                    withdrawalRules.withdrawn(account, amount, now);
+                    balanceChanged(account, -amount);
+                }
+                result = new Transaction(now, accountNumber, type, amount, account.getPostedBalance());
+                postings.add(result);
+                if (requestId != null) {
+                    idempotencyCache.put(requestId, result);
+                }
+            } finally {
+                transactionLog.append(postings);
+            }
+        }
+        return result;
     }
 
+    // Posts standing-order payments in order as one batch with one save. The batch runs
+    // under the directory lock after merging what other writers saved, so an occurrence
+    // another process already posted is found in the idempotency records and not repeated.
+    // Returns the number posted; the others get a failure reason.
+    int postStandingOrders(List<StandingOrderScheduler.Occurrence> occurrences) {
+        if (occurrences.isEmpty()) {
+            return 0;
+        }
+        int posted = 0;
+        saveRequests.incrementAndGet();
+        synchronized (saveLock) {
+            long covered = saveRequests.get();
+            try (DataDirectoryLock lock = DataDirectoryLock.acquire(file(LOCK_FILE))) {
+                if (lock.getGeneration() != syncedGeneration) {
+                    mergeFromDisk();
+                }
+                for (StandingOrderScheduler.Occurrence occurrence : occurrences) {
+                    StandingOrder order = occurrence.order;
+                    try {
+                        if (order.isDeposit()) {
+                            applyPosting(occurrence.requestId, order.getToAccount(), TransactionType.DEPOSIT,
+                                    order.getAmount());
+                        } else {
+                            applyTransfer(occurrence.requestId, order.getFromAccount(), order.getToAccount(),
+                                    order.getAmount());
+                        }
+                        posted++;
+                    } catch (RuntimeException e) {
+                        occurrence.failure = e.getMessage();
+                    }
+                }
+                writeFiles(lock);
+                savesCompleted = covered;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to post standing orders", e);
+            }
+        }
+        return posted;
+    }
+
+    private Transaction findOriginal(String requestId, String accountNumber, TransactionType type,
+                                     double amount, long now) {
+        Transaction original = idempotencyCache.get(requestId, now);
+        if (original != null && (!original.getAccountNumber().equals(accountNumber)
+                || original.getType() != type || original.getAmount() != amount)) {
+            throw new IllegalArgumentException("Request ID already used for a different posting");
+        }
+        return original;
+    }
+
+    // Interest accrues daily on read; this posts whatever has accrued on every account immediately
     public void processMonthlyInterest() {
-        for (Account account : accounts) {
-            if (account instanceof InterestBearing) {
-                ((InterestBearing) account).addInterest();
+        long now = System.currentTimeMillis();
+        List<Transaction> postings = new ArrayList<>();
+        for (Account account : getAllAccounts()) {
+            synchronized (account) {
+                account.preserveForSnapshot(Account.currentSnapshot());
+                postAccruedInterest(account, now, postings);
             }
         }
+        transactionLog.append(postings);
         saveData();
     }
 
-    public List<BankCustomer> getAllCustomers() { return new ArrayList<>(customers); }
-    public List<Account> getAllAccounts() { return new ArrayList<>(accounts); }
+    // Posts accrued interest for the next batch of accounts, resuming where the previous batch stopped.
+    // The postings are journalled at once, but the accounts only carry them as an unsaved change:
+    // the next save from any posting writes them, and a merge re-applies them meanwhile. A batch
+    // saves only when nothing else has for INTEREST_SAVE_INTERVAL_MILLIS. After a crash within
+    // that interval the interest accrues again from the saved date and is journalled twice.
+    public int postAccruedInterestBatch(int batchSize) {
+        List<Account> batch = new ArrayList<>();
+        synchronized (this) {
+            int visited = Math.min(batchSize, accounts.size());
+            for (int i = 0; i < visited; i++) {
+                if (interestCursor >= accounts.size()) {
+                    interestCursor = 0;
+                }
+                batch.add(accounts.get(interestCursor++));
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<Transaction> postings = new ArrayList<>();
+        for (Account account : batch) {
+            synchronized (account) {
+                account.preserveForSnapshot(Account.currentSnapshot());
+                postAccruedInterest(account, now, postings);
+            }
+        }
+        if (!postings.isEmpty()) {
+            transactionLog.append(postings);
+            interestUnsaved = true;
+        }
+        if (interestUnsaved && System.currentTimeMillis() - lastWriteMillis >= INTEREST_SAVE_INTERVAL_MILLIS) {
+            saveData();
+        }
+        return postings.size();
+    }
+
+    // Posts interest a small batch of accounts at a time, so month-end no longer rewrites every
+    // account at once
+    private void trickleInterest() {
+        int posted = postAccruedInterestBatch(INTEREST_TRICKLE_BATCH);
+        if (posted > 0) {
+            LOG.info("interest.trickle.posted", "accounts", posted);
+        }
+    }
+
+    public void startInterestTrickle() {
+        interestTrickle.start();
+    }
+
+    public void stopInterestTrickle() {
+        interestTrickle.stop();
+        if (interestUnsaved) {
+            saveData();
+        }
+    }
+
+    public void startCompaction() {
+        compactor.start();
+    }
+
+    public void stopCompaction() {
+        compactor.stop();
+    }
+
+    // A null fromAccountNumber sets up a recurring deposit into toAccountNumber
+    public StandingOrder createStandingOrder(String fromAccountNumber, String toAccountNumber, double amount,
+                                             StandingOrder.Frequency frequency, long firstDue) {
+        return standingOrders.create(fromAccountNumber, toAccountNumber, amount, frequency, firstDue);
+    }
+
+    public boolean cancelStandingOrder(String orderId) {
+        return standingOrders.cancel(orderId);
+    }
+
+    public List<StandingOrder> getStandingOrders() {
+        return standingOrders.getOrders();
+    }
+
+    public List<StandingOrder> getStandingOrders(String accountNumber) {
+        List<StandingOrder> matching = new ArrayList<>();
+        for (StandingOrder order : standingOrders.getOrders()) {
+            if (accountNumber.equals(order.getFromAccount()) || accountNumber.equals(order.getToAccount())) {
+                matching.add(order);
+            }
+        }
+        return matching;
+    }
+
+    // Executes whatever is due now without starting the background scheduler
+    public int runDueStandingOrders() {
+        return standingOrders.runDue(System.currentTimeMillis());
+    }
+
+    public void startStandingOrders() {
+        standingOrders.start();
+    }
+
+    public void stopStandingOrders() {
+        standingOrders.stop();
+    }
+
+    private void postAccruedInterest(Account account, long now, List<Transaction> postings) {
+        if (account instanceof InterestBearing && !account.isClosed()) {
+            double interest = ((InterestBearing) account).postAccruedInterest(now);
+            if (interest > 0) {
+                balanceChanged(account, interest);
+                events.publish(new BankEvent.InterestPosted(now, account.getAccountNumber(),
+                        account.getCustomer().getCustomerId(), interest, account.getPostedBalance()));
+                postings.add(new Transaction(now, account.getAccountNumber(), TransactionType.INTEREST,
+                        interest, account.getPostedBalance()));
+            }
+        }
+    }
+
+    public StatementGenerator.Report generateMonthlyStatements(YearMonth month, int workers) throws IOException {
+        StatementGenerator generator = new StatementGenerator(getAllCustomers(), transactionLog,
+                dataDirectory.resolve(STATEMENTS_DIRECTORY), workers);
+        return generator.generate(month);
+    }
+
+    // Postings touching the account within [from, to), archived history included
+    public List<Transaction> getTransactionHistory(String accountNumber, long from, long to) throws IOException {
+        List<Transaction> history = new ArrayList<>();
+        transactionLog.forEach(accountNumber, from, to, history::add);
+        return history;
+    }
+
+    // Moves postings and statement folders of months before the current one into the archive.
+    // Returns the number of postings archived.
+    public int archiveClosedPeriods() throws IOException {
+        YearMonth current = YearMonth.now();
+        long cutoff = current.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int archived;
+        int statementMonths = 0;
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(file(LOCK_FILE))) {
+            archived = transactionLog.archiveBefore(cutoff, (epoch, archivedBytes) -> {
+                if (replication != null) {
+                    replication.journalArchived(epoch, archivedBytes);
+                }
+            });
+            Path statements = dataDirectory.resolve(STATEMENTS_DIRECTORY);
+            if (Files.isDirectory(statements)) {
+                try (DirectoryStream<Path> months = Files.newDirectoryStream(statements, Files::isDirectory)) {
+                    for (Path monthDirectory : months) {
+                        YearMonth month;
+                        try {
+                            month = YearMonth.parse(monthDirectory.getFileName().toString());
+                        } catch (DateTimeParseException e) {
+                            continue;
+                        }
+                        if (month.isBefore(current)) {
+                            archive.archiveStatements(month, monthDirectory);
+                            statementMonths++;
+                        }
+                    }
+                }
+            }
+            if (replication != null && statementMonths > 0) {
+                replication.archiveUpdated();
+            }
+        }
+        LOG.info("archive.completed", "postings", archived, "statementMonths", statementMonths);
+        return archived;
+    }
+
+    public List<TransactionArchive.Segment> getArchiveSegments() throws IOException {
+        return archive.getSegments();
+    }
+
+    // Listeners are called on the event thread, after the change has been applied in memory
+    public <T extends BankEvent> BankEventBus.Subscription<T> subscribe(Class<T> type, Consumer<? super T> listener) {
+        return events.subscribe(type, listener);
+    }
+
+    private void accountOpened(Account account) {
+        aggregates.accountOpened(account);
+        accountIndex.add(account);
+        topBalances.accountChanged(account);
+        events.publish(new BankEvent.AccountOpened(System.currentTimeMillis(), account.getAccountNumber(),
+                account.getCustomer().getCustomerId()));
+    }
+
+    // Callers hold the account lock
+    private void tombstone(Account account, long closedAt) {
+        account.markClosed(closedAt);
+        aggregates.accountClosed(account);
+        accountIndex.remove(account);
+        topBalances.accountRemoved(account);
+    }
+
+    private void accountClosed(Account account) {
+        synchronized (this) {
+            account.getCustomer().removeAccount(account);
+        }
+        events.publish(new BankEvent.AccountClosed(System.currentTimeMillis(), account.getAccountNumber(),
+                account.getCustomer().getCustomerId()));
+    }
+
+    private void customerClosed(BankCustomer customer) {
+        aggregates.customerClosed(customer.getCustomerId());
+        topBalances.customerRemoved(customer);
+        events.publish(new BankEvent.CustomerUpdated(System.currentTimeMillis(), customer.getCustomerId()));
+    }
+
+    // Callers hold the account lock, so the published balance is the one this change produced
+    private void balanceChanged(Account account, double change) {
+        aggregates.balanceChanged(account, change);
+        accountIndex.balanceChanged(account);
+        topBalances.accountChanged(account);
+        events.publish(new BankEvent.BalanceChanged(System.currentTimeMillis(), account.getAccountNumber(),
+                account.getCustomer().getCustomerId(), change, account.getPostedBalance()));
+    }
+
+    // Withdrawals declined per rule since the rules file was last loaded
+    public Map<String, Long> getWithdrawalRuleHits() {
+        return withdrawalRules.getHitCounts();
+    }
+
+    public BalanceAggregates.Totals getCustomerTotals(String customerId) {
+        return aggregates.getCustomerTotals(customerId);
+    }
+
+    public BalanceAggregates.Totals getBranchTotals(String branch) {
+        return aggregates.getBranchTotals(branch);
+    }
+
+    public BalanceAggregates.Totals getAccountTypeTotals(String accountType) {
+        return aggregates.getAccountTypeTotals(accountType);
+    }
+
+    public BalanceAggregates.Totals getBankTotals() {
+        return aggregates.getBankTotals();
+    }
+
+    // Largest accounts first; null branch or account type ranks every branch or type
+    public List<Account> getTopAccounts(String branch, String accountType, int limit) {
+        return topBalances.topAccounts(branch, accountType == null ? null : accountType.toUpperCase(), limit);
+    }
+
+    public List<BankCustomer> getTopCustomers(int limit) {
+        return topBalances.topCustomers(limit);
+    }
+
+    public List<String> getBranches() {
+        return topBalances.getBranches();
+    }
+
+    // Closed records stay in the lists as tombstones until compacted, but are never returned
+    public synchronized List<BankCustomer> getAllCustomers() {
+        List<BankCustomer> open = new ArrayList<>(customers.size());
+        for (BankCustomer customer : customers) {
+            if (!customer.isClosed()) open.add(customer);
+        }
+        return open;
+    }
+
+    public synchronized List<Account> getAllAccounts() {
+        List<Account> open = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            if (!account.isClosed()) open.add(account);
+        }
+        return open;
+    }
+
+    // Answered from the type, branch and balance indexes rather than a scan of every account
+    public List<Account> findAccounts(AccountQuery query) {
+        return accountIndex.find(query);
+    }
 
     public Account findAccount(String accountNumber) {
-        return accounts.stream()
-                .filter(acc -> acc.getAccountNumber().equals(accountNumber))
-                .findFirst()
-                .orElse(null);
+        Account account = accountNumber == null ? null : accountsByNumber.get(accountNumber);
+        return account == null || account.isClosed() ? null : account;
     }
 
     // File operations (same implementation as before, but in new package)
     private void loadData() {
-        loadTellers();
-        loadCustomers();
-        loadAccounts();
-        updateCounters();
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(file(LOCK_FILE))) {
+            loadFiles();
+            syncedGeneration = lock.getGeneration();
+            if (replication != null) {
+                List<User> userSnapshot = new ArrayList<>(users);
+                replication.commit(customerLines(customers), tellerLines(userSnapshot), accountLines(accounts));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to lock the data directory", e);
+        }
     }
 
-    private void loadTellers() {
-        try (Scanner fileScanner = new Scanner(new File(TELLERS_FILE))) {
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine().trim();
-                if (!line.isEmpty()) {
-                    BankTeller teller = BankTeller.fromFileString(line);
-                    if (teller != null) users.add(teller);
+    private void loadFiles() {
+        ParallelDataLoader.Result result = new ParallelDataLoader(LOAD_PARALLELISM)
+                .load(file(TELLERS_FILE), file(CUSTOMERS_FILE), file(ACCOUNTS_FILE));
+        users.addAll(result.getTellers());
+        customers.addAll(result.getCustomers());
+        users.addAll(result.getCustomers());
+        rebuildUsernameFilter();
+        accounts.addAll(result.getAccounts());
+        for (Account account : accounts) {
+            accountsByNumber.putIfAbsent(account.getAccountNumber(), account);
+            if (account.isClosed()) {
+                continue;
+            }
+            aggregates.accountOpened(account);
+            accountIndex.add(account);
+            topBalances.accountChanged(account);
+        }
+        idempotencyCache.load(file(IDEMPOTENCY_FILE));
+    }
+
+    // Group commit: a caller whose change is already covered by a save that started
+    // after the change returns without rewriting the files again.
+    // Other processes may share the data directory, so files are only written under the
+    // directory lock, after merging in whatever was written since this instance last synced.
+    public void saveData() {
+        long ticket = saveRequests.incrementAndGet();
+        synchronized (saveLock) {
+            if (savesCompleted >= ticket) {
+                return;
+            }
+            long covered = saveRequests.get();
+            try (DataDirectoryLock lock = DataDirectoryLock.acquire(file(LOCK_FILE))) {
+                if (lock.getGeneration() != syncedGeneration) {
+                    mergeFromDisk();
                 }
+                writeFiles(lock);
+                savesCompleted = covered;
+            } catch (IOException e) {
+                LOG.error("data.save.failed", e);
             }
-        } catch (FileNotFoundException e) {
-            // File doesn't exist yet
         }
     }
 
-    private void loadCustomers() {
-        try (Scanner fileScanner = new Scanner(new File(CUSTOMERS_FILE))) {
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine().trim();
-                if (!line.isEmpty()) {
-                    BankCustomer customer = BankCustomer.fromFileString(line);
-                    if (customer != null) {
-                        customers.add(customer);
-                        users.add(customer);
-                    }
+    // Callers hold saveLock and the directory lock, and have merged what other writers saved
+    private void writeFiles(DataDirectoryLock lock) throws IOException {
+        List<BankCustomer> customerSnapshot;
+        List<Account> accountSnapshot;
+        List<User> userSnapshot;
+        interestUnsaved = false;
+        synchronized (this) {
+            customerSnapshot = new ArrayList<>(customers);
+            accountSnapshot = new ArrayList<>(accounts);
+            userSnapshot = new ArrayList<>(users);
+            changedCustomers.clear();
+        }
+        List<String> customerLines = customerLines(customerSnapshot);
+        List<String> accountLines = accountLines(accountSnapshot);
+        List<String> tellerLines = tellerLines(userSnapshot);
+        saveLines(file(CUSTOMERS_FILE), customerLines);
+        saveLines(file(ACCOUNTS_FILE), accountLines);
+        saveUsers(userSnapshot);
+        saveLines(file(TELLERS_FILE), tellerLines);
+        idempotencyCache.save(file(IDEMPOTENCY_FILE));
+        syncedGeneration = lock.bumpGeneration();
+        lastWriteMillis = System.currentTimeMillis();
+        if (replication != null) {
+            replication.commit(customerLines, tellerLines, accountLines);
+        }
+    }
+
+    // Drops tombstones past the retention period. Only the service lock is held, which
+    // postings do not take. A writer that has not yet merged a closure would otherwise
+    // write the record back, hence the retention period rather than dropping at once.
+    public int compactClosedRecords() {
+        return compactClosedRecords(System.currentTimeMillis() - TOMBSTONE_RETENTION_MILLIS);
+    }
+
+    int compactClosedRecords(long closedBefore) {
+        int accountsRemoved = 0;
+        int customersRemoved = 0;
+        synchronized (this) {
+            for (Iterator<Account> it = accounts.iterator(); it.hasNext(); ) {
+                Account account = it.next();
+                if (account.isClosed() && account.getClosedAt() < closedBefore) {
+                    it.remove();
+                    accountsByNumber.remove(account.getAccountNumber(), account);
+                    accountsRemoved++;
+                }
+            }
+            for (Iterator<BankCustomer> it = customers.iterator(); it.hasNext(); ) {
+                BankCustomer customer = it.next();
+                if (customer.isClosed() && customer.getClosedAt() < closedBefore) {
+                    it.remove();
+                    customersRemoved++;
                 }
             }
-        } catch (FileNotFoundException e) {
-            // File doesn't exist yet
+            if (customersRemoved > 0) {
+                users.removeIf(user -> isClosed(user) && ((BankCustomer) user).getClosedAt() < closedBefore);
+                rebuildUsernameFilter();
+            }
+        }
+        if (accountsRemoved + customersRemoved == 0) {
+            return 0;
         }
+        LOG.info("tombstones.compacted", "accounts", accountsRemoved, "customers", customersRemoved);
+        saveData();
+        return accountsRemoved + customersRemoved;
     }
 
-    private void loadAccounts() {
-        try (Scanner fileScanner = new Scanner(new File(ACCOUNTS_FILE))) {
-            System.out.println("=== LOADING ACCOUNTS ===");
-            int loadedCount = 0;
-            int errorCount = 0;
+    // Picks up records written by other processes; cheap when the directory generation is unchanged
+    public void refresh() {
+        synchronized (saveLock) {
+            try (DataDirectoryLock lock = DataDirectoryLock.acquire(file(LOCK_FILE))) {
+                if (lock.getGeneration() != syncedGeneration) {
+                    mergeFromDisk();
+                    syncedGeneration = lock.getGeneration();
+                }
+            } catch (IOException e) {
+                LOG.error("data.refresh.failed", e);
+            }
+        }
+    }
 
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine().trim();
-                if (!line.isEmpty()) {
-                    String[] parts = line.split("\\|");
-                    System.out.println("Loading account data: " + line);
+    // Applies records another writer saved. Accounts carry a version: a newer record on disk
+    // replaces the balance this instance last synced, and any change posted here since then
+    // is re-applied on top of it instead of overwriting the other writer's postings.
+    // Interest posted here is not re-applied when the other writer has posted interest for
+    // the same days; a negative INTEREST row reverses its journal entry.
+    // A newer tombstone closes the account here too, unless this instance has unsaved
+    // postings to it; the account then stays open and its next save reopens it elsewhere.
+    // Only changed records are parsed: a customer line equal to the one this instance would
+    // write, or an account line whose version is not newer, is passed over as it is read.
+    private void mergeFromDisk() {
+        Map<String, BankCustomer> customerIndex = new HashMap<>();
+        Set<String> usernames = new HashSet<>();
+        synchronized (this) {
+            for (BankCustomer customer : customers) {
+                customerIndex.put(customer.getCustomerId(), customer);
+            }
+            for (User user : users) {
+                usernames.add(user.getUsername());
+            }
+        }
 
-                    if (parts.length >= 5) {
-                        String type = parts[0];
-                        String accNumber = parts[1];
-                        double balance = Double.parseDouble(parts[2]);
-                        String branch = parts[3];
-                        String customerId = parts[4];
+        int customersAdded = 0;
+        Map<BankCustomer, Long> closedElsewhere = new HashMap<>();
+        for (String line : readLines(file(CUSTOMERS_FILE))) {
+            BankCustomer known = customerIndex.get(BankCustomer.customerIdOf(line));
+            if (known != null) {
+                synchronized (this) {
+                    if (line.equals(known.toFileString())) {
+                        continue;
+                    }
+                }
+            }
+            BankCustomer stored = parseRecord(line, BankCustomer::fromFileString);
+            if (stored == null) {
+                continue;
+            }
+            BankCustomer local = customerIndex.get(stored.getCustomerId());
+            synchronized (this) {
+                if (local == null) {
+                    customers.add(stored);
+                    addUser(stored);
+                    usernames.add(stored.getUsername());
+                    customerIndex.put(stored.getCustomerId(), stored);
+                    customersAdded++;
+                } else if (stored.isClosed() && !local.isClosed()) {
+                    // Applied once this instance's accounts for the customer are merged
+                    closedElsewhere.put(local, stored.getClosedAt());
+                } else if (!changedCustomers.contains(local.getCustomerId())
+                        && !stored.toFileString().equals(local.toFileString())) {
+                    local.setFirstName(stored.getFirstName());
+                    local.setSurname(stored.getSurname());
+                    local.setAddress(stored.getAddress());
+                    events.publish(new BankEvent.CustomerUpdated(System.currentTimeMillis(), local.getCustomerId()));
+                }
+            }
+        }
 
-                        BankCustomer customer = findCustomerById(customerId);
-                        if (customer != null) {
-                            Account account = createAccountFromData(type, accNumber, balance, branch, customer, parts);
+        for (String line : readLines(file(TELLERS_FILE))) {
+            BankTeller teller = parseRecord(line, BankTeller::fromFileString);
+            if (teller != null && usernames.add(teller.getUsername())) {
+                synchronized (this) {
+                    addUser(teller);
+                }
+            }
+        }
 
-                            if (account != null) {
-                                accounts.add(account);
-                                customer.addAccount(account);
-                                loadedCount++;
-                                System.out.println("✓ Successfully loaded account: " + accNumber);
-                            } else {
-                                errorCount++;
-                                System.out.println("✗ Failed to create account: " + accNumber);
-                            }
-                        } else {
-                            errorCount++;
-                            System.out.println("✗ Customer not found for account: " + customerId);
+        int accountsAdded = 0;
+        int accountsMerged = 0;
+        List<Transaction> reversals = new ArrayList<>();
+        for (String line : readLines(file(ACCOUNTS_FILE))) {
+            String accountNumber = AccountRecord.accountNumberOf(line);
+            Account known = accountNumber == null ? null : accountsByNumber.get(accountNumber);
+            long version = AccountRecord.versionOf(line);
+            if (known != null && version >= 0 && version <= known.getVersion()) {
+                continue;
+            }
+            AccountRecord record = parseRecord(line, AccountRecord::parse);
+            if (record == null) {
+                continue;
+            }
+            // Includes tombstones, which are never returned by findAccount
+            Account local = accountsByNumber.get(record.getAccountNumber());
+            if (local == null) {
+                BankCustomer customer = customerIndex.get(record.getCustomerId());
+                Account account = customer == null ? null : record.toAccount(customer);
+                if (account == null) {
+                    if (!record.isClosed()) {
+                        LOG.warn("account.merge.skipped", "account", record.getAccountNumber());
+                    }
+                    continue;
+                }
+                synchronized (this) {
+                    if (!account.isClosed()) {
+                        customer.addAccount(account);
+                    }
+                    accounts.add(account);
+                    accountsByNumber.put(account.getAccountNumber(), account);
+                }
+                if (!account.isClosed()) {
+                    accountOpened(account);
+                    accountsAdded++;
+                }
+            } else if (record.getVersion() > local.getVersion()) {
+                boolean closed = false;
+                boolean reopened = false;
+                synchronized (local) {
+                    local.preserveForSnapshot(Account.currentSnapshot());
+                    double previous = local.getPostedBalance();
+                    double droppedInterest = local.mergeNewer(record.getVersion(), record.getBalance(),
+                            record.getLastAccrual());
+                    double unsaved = local.getUnsavedChange();
+                    if (droppedInterest != 0) {
+                        reversals.add(new Transaction(System.currentTimeMillis(), local.getAccountNumber(),
+                                TransactionType.INTEREST, -droppedInterest, local.getPostedBalance()));
+                        LOG.info("account.interest.dropped", "account", local.getAccountNumber(),
+                                "interest", droppedInterest);
+                    }
+                    if (local.isClosed()) {
+                        // Another writer kept the account open after closing it here
+                        reopened = !record.isClosed();
+                        if (reopened) {
+                            local.reopen();
                         }
                     } else {
-                        errorCount++;
-                        System.out.println("✗ Invalid account data (less than 5 parts): " + line);
+                        balanceChanged(local, local.getPostedBalance() - previous);
+                        if (record.isClosed() && unsaved == 0) {
+                            tombstone(local, record.getClosedAt());
+                            local.markSynced(record.getVersion(), record.getBalance());
+                            closed = true;
+                        } else if (record.isClosed()) {
+                            LOG.warn("account.close.conflict", "account", local.getAccountNumber(), "unsaved", unsaved);
+                        }
+                    }
+                    if (unsaved != 0) {
+                        LOG.info("account.merged", "account", local.getAccountNumber(), "version", record.getVersion(),
+                                "unsaved", unsaved, "balance", local.getPostedBalance());
+                    }
+                    if (local.getPostedBalance() < 0) {
+                        LOG.warn("account.merge.overdrawn", "account", local.getAccountNumber(),
+                                "balance", local.getPostedBalance());
+                    }
+                }
+                if (closed) {
+                    accountClosed(local);
+                } else if (reopened) {
+                    synchronized (this) {
+                        local.getCustomer().addAccount(local);
                     }
+                    accountOpened(local);
                 }
+                accountsMerged++;
             }
-            System.out.println("Loading completed: " + loadedCount + " accounts loaded, " + errorCount + " errors");
-        } catch (FileNotFoundException e) {
-            System.out.println("Accounts file not found, starting with empty accounts.");
         }
-    }
-
-    private Account createAccountFromData(String type, String accNumber, double balance,
-                                          String branch, BankCustomer customer, String[] parts) {
-        System.out.println("Creating account from data - Type: " + type + ", Parts length: " + parts.length);
 
-        switch (type) {
-            case "SAVINGS":
-                System.out.println("Creating Savings Account: " + accNumber);
-                return new SavingsAccount(accNumber, balance, branch, customer);
-            case "INVESTMENT":
-                System.out.println("Creating Investment Account: " + accNumber);
-                return new InvestmentAccount(accNumber, balance, branch, customer);
-            case "CHEQUE":
-                if (parts.length >= 7) {
-                    String employer = parts[5];
-                    String companyAddress = parts[6];
-                    System.out.println("Creating Cheque Account: " + accNumber + " | Employer: " + employer);
-                    return new ChequeAccount(accNumber, balance, branch, customer, employer, companyAddress);
-                } else {
-                    // FIX: Handle incomplete Cheque account data gracefully
-                    System.out.println("ERROR: Incomplete Cheque account data. Expected 7 parts, got " + parts.length);
-                    System.out.println("Data: " + String.join("|", parts));
-                    // Create a Cheque account with default values instead of returning null
-                    return new ChequeAccount(accNumber, balance, branch, customer, "Unknown Employer", "");
+        for (Map.Entry<BankCustomer, Long> entry : closedElsewhere.entrySet()) {
+            BankCustomer customer = entry.getKey();
+            synchronized (this) {
+                if (!customer.getAccounts().isEmpty()) {
+                    LOG.warn("customer.close.conflict", "customer", customer.getCustomerId(),
+                            "accounts", customer.getAccounts().size());
+                    continue;
                 }
-            default:
-                System.out.println("Unknown account type: " + type);
-                return null;
+                customer.markClosed(entry.getValue());
+            }
+            customerClosed(customer);
         }
+
+        transactionLog.append(reversals);
+        idempotencyCache.load(file(IDEMPOTENCY_FILE));
+        LOG.info("data.synced", "customersAdded", customersAdded, "accountsAdded", accountsAdded,
+                "accountsUpdated", accountsMerged);
     }
 
-    private BankCustomer findCustomerById(String customerId) {
-        return customers.stream()
-                .filter(c -> c.getCustomerId().equals(customerId))
-                .findFirst()
-                .orElse(null);
+    // Malformed lines are logged and skipped, as the loader does, rather than failing the merge
+    private static <T> T parseRecord(String line, Function<String, T> parser) {
+        T record;
+        try {
+            record = parser.apply(line);
+        } catch (IllegalArgumentException e) {
+            record = null;
+        }
+        if (record == null) {
+            LOG.warn("record.invalid", "record", line);
+        }
+        return record;
     }
 
-    public void saveData() {
-        saveCustomers();
-        saveAccounts();
-        saveUsers();
-        saveTellers();
+    private String file(String fileName) {
+        return dataDirectory.resolve(fileName).toString();
     }
 
-    private void saveCustomers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(CUSTOMERS_FILE))) {
-            for (BankCustomer customer : customers) {
-                writer.println(customer.toFileString());
+    private static List<String> readLines(String fileName) {
+        List<String> lines = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
             }
+        } catch (NoSuchFileException e) {
+            // Nothing written yet
         } catch (IOException e) {
-            System.out.println("Error saving customers: " + e.getMessage());
+            LOG.error("file.read.failed", e, "file", fileName);
         }
+        return lines;
     }
 
-    private void saveAccounts() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(ACCOUNTS_FILE))) {
-            System.out.println("=== SAVING ACCOUNTS ===");
-            for (Account account : accounts) {
-                String line = account.getAccountType() + "|" +
-                        account.getAccountNumber() + "|" +
-                        account.getBalance() + "|" +
-                        account.getBranch() + "|" +
-                        account.getCustomer().getCustomerId();
+    private List<String> customerLines(List<BankCustomer> customers) {
+        List<String> lines = new ArrayList<>(customers.size());
+        for (BankCustomer customer : customers) {
+            lines.add(customer.toFileString());
+        }
+        return lines;
+    }
 
-                // ADD PROPER CHEQUE ACCOUNT SAVING
-                if (account instanceof ChequeAccount) {
-                    ChequeAccount chequeAccount = (ChequeAccount) account;
-                    line += "|" + chequeAccount.getEmployer() + "|" + chequeAccount.getCompanyAddress();
-                    System.out.println("Saving Cheque Account: " + line);
-                } else {
-                    System.out.println("Saving Account: " + line);
+    private List<String> accountLines(List<Account> accounts) {
+        List<String> lines = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            String line;
+            synchronized (account) {
+                // Only records changed here get a new version; others keep the one read from disk
+                if (account.hasUnsavedChanges()) {
+                    account.markSynced(account.getVersion() + 1, account.getPostedBalance());
                 }
+                line = AccountRecord.format(account);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("account.saving", "record", line);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
 
-                writer.println(line);
+    private List<String> tellerLines(List<User> users) {
+        List<String> lines = new ArrayList<>();
+        for (User user : users) {
+            if (user instanceof BankTeller) {
+                lines.add(user.toFileString());
             }
-            System.out.println("Total accounts saved: " + accounts.size());
-        } catch (IOException e) {
-            System.out.println("Error saving accounts: " + e.getMessage());
-            e.printStackTrace();
         }
+        return lines;
     }
 
-    private void saveUsers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(USERS_FILE))) {
-            for (User user : users) {
-                if (user instanceof BankCustomer) {
-                    writer.println(user.toFileString());
-                }
+    private void saveLines(String fileName, List<String> lines) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+            for (String line : lines) {
+                writer.println(line);
             }
+            LOG.debug("file.saved", "file", fileName, "count", lines.size());
         } catch (IOException e) {
-            System.out.println("Error saving users: " + e.getMessage());
+            LOG.error("file.save.failed", e, "file", fileName);
         }
     }
 
-    private void saveTellers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(TELLERS_FILE))) {
+    private void saveUsers(List<User> users) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file(USERS_FILE)))) {
             for (User user : users) {
-                if (user instanceof BankTeller) {
+                if (user instanceof BankCustomer) {
                     writer.println(user.toFileString());
                 }
             }
         } catch (IOException e) {
-            System.out.println("Error saving tellers: " + e.getMessage());
+            LOG.error("users.save.failed", e);
         }
     }
 
-    private void updateCounters() {
-        int maxAccountNumber = accounts.stream()
-                .map(Account::getAccountNumber)
-                .map(num -> num.replace("ACC", ""))
-                .mapToInt(num -> {
-                    try {
-                        return Integer.parseInt(num);
-                    } catch (NumberFormatException e) {
-                        return 1000;
-                    }
-                })
+    // Only used the first time the ID file is created, to continue numbering after existing records
+    private long firstFreeAccountNumber() {
+        List<Account> all;
+        synchronized (this) {
+            all = new ArrayList<>(accounts);
+        }
+        return all.stream()
+                .mapToLong(account -> parseIdNumber(account.getAccountNumber(), "ACC"))
                 .max()
-                .orElse(1000);
-        accountCounter = maxAccountNumber + 1;
+                .orElse(1000) + 1;
+    }
 
-        int maxCustomerNumber = customers.stream()
-                .map(BankCustomer::getCustomerId)
-                .map(id -> id.replace("CUST", ""))
-                .mapToInt(id -> {
-                    try {
-                        return Integer.parseInt(id);
-                    } catch (NumberFormatException e) {
-                        return 1000;
-                    }
-                })
+    private long firstFreeCustomerNumber() {
+        List<BankCustomer> all;
+        synchronized (this) {
+            all = new ArrayList<>(customers);
+        }
+        return all.stream()
+                .mapToLong(customer -> parseIdNumber(customer.getCustomerId(), "CUST"))
                 .max()
-                .orElse(1000);
-        customerCounter = maxCustomerNumber + 1;
+                .orElse(1000) + 1;
+    }
+
+    private static long parseIdNumber(String id, String prefix) {
+        try {
+            return Long.parseLong(id.replace(prefix, ""));
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
     }
 
     private String generateAccountNumber() {
-        return "ACC" + (accountCounter++);
+        return accountIds.nextId();
     }
 }
\ No newline at end of file
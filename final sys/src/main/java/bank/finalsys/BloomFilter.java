@@ -0,0 +1,69 @@
+package bank.finalsys;
+
+// Probabilistic set of strings. mightContain never returns false for a string that
+// was added, and returns true for an absent one at roughly the configured rate.
+// Bits are derived from one 64-bit hash split into two halves (double hashing).
+// Not thread-safe; BankService guards it with the same lock as the user list.
+public class BloomFilter {
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        this.capacity = Math.max(1, expectedEntries);
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.bits = new long[(bitCount + 63) >>> 6];
+    }
+
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Past its capacity the false positive rate climbs; the owner should rebuild it larger
+    public boolean isFull() {
+        return size > capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars, finished with a murmur-style mix
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
\ No newline at end of file
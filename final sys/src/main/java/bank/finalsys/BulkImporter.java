@@ -0,0 +1,310 @@
+package bank.finalsys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Streams a CSV of customers and their opening accounts into BankService. Rows are
+// validated in parallel chunks with the account classes' own opening rules, then
+// committed in file order, one save per batch. Rows that fail go to a rejects file
+// with their line number and reason. Columns:
+//   username,password,firstName,surname,address,accountType,deposit,branch,employer,companyAddress
+// The account columns may be left empty to create a customer only. Consecutive rows
+// with the same username open further accounts for that customer.
+public class BulkImporter {
+    private static final BankLogger LOG = BankLogger.getLogger(BulkImporter.class);
+
+    static final int COLUMNS = 10;
+    private static final int CHUNK_ROWS = 2048;
+
+    private final BankService bankService;
+    private final int workers;
+    private final int batchSize;
+    // First row of the current run of rows sharing a username
+    private Row runHead;
+
+    public BulkImporter(BankService bankService, int workers, int batchSize) {
+        this.bankService = bankService;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public Report importFile(Path csv, Path rejectsFile) throws IOException {
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int[] counts = new int[4]; // rows, customers, accounts, rejected
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+            rejects.write("line,reason,row");
+            rejects.newLine();
+
+            // At most a few chunks are in flight, so memory stays flat however large the file is
+            Deque<CompletableFuture<List<Row>>> pending = new ArrayDeque<>();
+            List<Row> batch = new ArrayList<>(batchSize);
+            List<Row> chunk = new ArrayList<>(CHUNK_ROWS);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.startsWith("username,"))) {
+                    continue;
+                }
+                chunk.add(new Row(lineNumber, line));
+                if (chunk.size() == CHUNK_ROWS) {
+                    pending.add(validateAsync(chunk, executor));
+                    chunk = new ArrayList<>(CHUNK_ROWS);
+                    if (pending.size() > workers * 2) {
+                        collect(pending.poll().join(), batch, rejects, counts);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(validateAsync(chunk, executor));
+            }
+            while (!pending.isEmpty()) {
+                collect(pending.poll().join(), batch, rejects, counts);
+            }
+            commit(batch, rejects, counts);
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Report report = new Report(counts[0], counts[1], counts[2], counts[3], System.nanoTime() - startTime);
+        LOG.info("import.completed", "file", csv, "rows", report.getRowCount(), "customers", report.getCustomerCount(),
+                "accounts", report.getAccountCount(), "rejected", report.getRejectedCount(),
+                "millis", report.getElapsedMillis(), "perSecond", String.format("%.1f", report.getRowsPerSecond()));
+        return report;
+    }
+
+    private CompletableFuture<List<Row>> validateAsync(List<Row> chunk, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (Row row : chunk) {
+                row.validate();
+            }
+            return chunk;
+        }, executor);
+    }
+
+    private void collect(List<Row> rows, List<Row> batch, BufferedWriter rejects, int[] counts) throws IOException {
+        for (Row row : rows) {
+            counts[0]++;
+            // A rejected first row still heads its run, so the rows after it are rejected too
+            if (row.username != null) {
+                if (runHead != null && runHead.username.equals(row.username)) {
+                    row.owner = runHead;
+                } else {
+                    runHead = row;
+                }
+            }
+            if (row.rejectReason != null) {
+                reject(row, rejects, counts);
+            } else {
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    commit(batch, rejects, counts);
+                }
+            }
+        }
+    }
+
+    private void commit(List<Row> batch, BufferedWriter rejects, int[] counts) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] created = bankService.importBatch(batch);
+        counts[1] += created[0];
+        counts[2] += created[1];
+        for (Row row : batch) {
+            if (row.rejectReason != null) {
+                reject(row, rejects, counts);
+            }
+        }
+        batch.clear();
+    }
+
+    private void reject(Row row, BufferedWriter rejects, int[] counts) throws IOException {
+        counts[3]++;
+        rejects.write(row.lineNumber + "," + quote(row.rejectReason) + "," + quote(row.line));
+        rejects.newLine();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    // Splits one CSV line; fields may be quoted, with "" standing for a quote inside one
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>(COLUMNS);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    // One CSV row. Validation covers everything that does not depend on existing data;
+    // BankService sets rejectReason for rows whose username is already taken.
+    static class Row {
+        final int lineNumber;
+        final String line;
+        String username;
+        String password;
+        String firstName;
+        String surname;
+        String address;
+        String accountType;
+        double deposit;
+        String branch;
+        String employer;
+        String companyAddress;
+        String rejectReason;
+        // Set on rows that open another account for the customer created by an earlier row
+        Row owner;
+        // The customer created for this row once committed
+        BankCustomer customer;
+
+        Row(int lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+
+        boolean hasAccount() {
+            return accountType != null;
+        }
+
+        void validate() {
+            try {
+                List<String> fields = parseCsv(line);
+                if (fields.size() != COLUMNS) {
+                    throw new IllegalArgumentException("Expected " + COLUMNS + " columns, found " + fields.size());
+                }
+                for (String field : fields) {
+                    if (field.indexOf('|') >= 0) {
+                        throw new IllegalArgumentException("Fields may not contain '|'");
+                    }
+                }
+                username = required(fields.get(0), "Username");
+                password = required(fields.get(1), "Password");
+                firstName = required(fields.get(2), "First name");
+                surname = required(fields.get(3), "Surname");
+                address = fields.get(4);
+                if (!fields.get(5).isEmpty()) {
+                    validateAccount(fields);
+                }
+            } catch (IllegalArgumentException e) {
+                rejectReason = e.getMessage();
+            }
+        }
+
+        // The same opening rules the account constructors apply
+        private void validateAccount(List<String> fields) {
+            accountType = fields.get(5).toUpperCase();
+            try {
+                deposit = Double.parseDouble(fields.get(6));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid deposit amount");
+            }
+            branch = required(fields.get(7), "Branch");
+            switch (accountType) {
+                case "SAVINGS":
+                    SavingsAccount.validateOpeningDeposit(deposit);
+                    break;
+                case "INVESTMENT":
+                    InvestmentAccount.validateOpeningDeposit(deposit);
+                    break;
+                case "CHEQUE":
+                    if (!(deposit >= 0)) {
+                        throw new IllegalArgumentException("Invalid deposit amount");
+                    }
+                    employer = fields.get(8);
+                    ChequeAccount.validateEmployer(employer);
+                    companyAddress = fields.get(9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid account type");
+            }
+        }
+
+        private static String required(String value, String name) {
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException(name + " is required");
+            }
+            return value;
+        }
+    }
+
+    public static class Report {
+        private final int rowCount;
+        private final int customerCount;
+        private final int accountCount;
+        private final int rejectedCount;
+        private final long elapsedNanos;
+
+        private Report(int rowCount, int customerCount, int accountCount, int rejectedCount, long elapsedNanos) {
+            this.rowCount = rowCount;
+            this.customerCount = customerCount;
+            this.accountCount = accountCount;
+            this.rejectedCount = rejectedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getRowCount() { return rowCount; }
+        public int getCustomerCount() { return customerCount; }
+        public int getAccountCount() { return accountCount; }
+        public int getRejectedCount() { return rejectedCount; }
+        public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowCount / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + rowCount + " rows: " + customerCount + " customers, " + accountCount + " accounts, " +
+                    rejectedCount + " rejected in " + getElapsedMillis() + " ms (" +
+                    String.format("%.1f", getRowsPerSecond()) + " rows/sec)";
+        }
+    }
+}
\ No newline at end of file
@@ -7,13 +7,15 @@ public class ChequeAccount extends Account {
     public ChequeAccount(String accountNumber, double balance, String branch, BankCustomer customer,
                          String employer, String companyAddress) {
         super(accountNumber, balance, branch, customer);
+        validateEmployer(employer);
+        this.employer = employer;
+        this.companyAddress = companyAddress;
+    }
 
+    public static void validateEmployer(String employer) {
         if (employer == null || employer.trim().isEmpty()) {
             throw new IllegalArgumentException("Employer information is required for cheque account");
         }
-
-        this.employer = employer;
-        this.companyAddress = companyAddress;
     }
 
     @Override
@@ -0,0 +1,41 @@
+package bank.finalsys;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Gives each distinct value a small code, so objects that repeat a value from a short
+// list (an account's branch) hold two bytes instead of their own copy of the string.
+// Codes are never reused or removed; lookups by code take no lock.
+public class CodeDictionary {
+    private final Map<String, Short> codes = new HashMap<>();
+    private volatile String[] values = new String[0];
+
+    // -1 stands for null
+    public synchronized short code(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Short code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        String[] current = values;
+        if (current.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many distinct values");
+        }
+        String[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = value;
+        codes.put(value, (short) current.length);
+        values = grown;
+        return (short) current.length;
+    }
+
+    public String value(short code) {
+        return code < 0 ? null : values[code];
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
\ No newline at end of file
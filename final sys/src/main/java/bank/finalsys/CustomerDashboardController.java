@@ -1,5 +1,7 @@
 package bank.finalsys;
 
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -11,6 +13,8 @@ import javafx.stage.Stage;
 import javafx.stage.Modality;
 
 public class CustomerDashboardController {
+    private static final BankLogger LOG = BankLogger.getLogger(CustomerDashboardController.class);
+
     @FXML private Label welcomeLabel;
     @FXML private TextField menuChoiceField;
     @FXML private VBox contentArea;
@@ -19,14 +23,21 @@ public class CustomerDashboardController {
 
     private BankService bankService;
     private BankCustomer currentUser;
+    private CustomerViewModel customerViewModel;
     private Stage primaryStage;
 
     public CustomerDashboardController() {
-        this.bankService = new BankService();
+        this.bankService = Main.getBankService();
     }
 
     public void setCurrentUser(BankCustomer user) {
-        this.currentUser = user;
+        // Use this service's copy of the customer, so postings and change events refer to the same accounts
+        BankCustomer serviceCopy = bankService.findCustomerByUsername(user.getUsername());
+        this.currentUser = serviceCopy != null ? serviceCopy : user;
+        if (customerViewModel != null) {
+            customerViewModel.dispose();
+        }
+        this.customerViewModel = new CustomerViewModel(bankService, currentUser);
         if (welcomeLabel != null) {
             welcomeLabel.setText("Welcome, " + user.getFullName());
         }
@@ -65,6 +76,8 @@ public class CustomerDashboardController {
 
         messageLabel.setText("");
         contentArea.getChildren().clear();
+        // Another workstation may have written to the data directory since the last action
+        bankService.refresh();
 
         switch (choice) {
             case "1":
@@ -145,7 +158,7 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error loading accounts: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("accounts.view.failed", e);
         }
     }
 
@@ -163,21 +176,15 @@ public class CustomerDashboardController {
             Label instruction = new Label("Enter deposit details below:");
             instruction.setStyle("-fx-font-weight: bold;");
 
-            ComboBox<String> accountComboBox = new ComboBox<>();
+            ComboBox<AccountViewModel> accountComboBox = createAccountComboBox(customerViewModel.getAccounts(), true);
             TextField amountField = new TextField();
             Label messageLabel = new Label();
             messageLabel.setStyle("-fx-font-weight: bold; -fx-wrap-text: true;");
             messageLabel.setPrefHeight(60);
 
-            // Populate account combo box
-            if (currentUser.getAccounts().isEmpty()) {
+            if (accountComboBox.getItems().isEmpty()) {
                 accountComboBox.setPromptText("No accounts available");
                 accountComboBox.setDisable(true);
-            } else {
-                currentUser.getAccounts().forEach(account -> {
-                    accountComboBox.getItems().add(account.getAccountNumber() + " - " + account.getAccountType() +
-                            " (BWP " + String.format("%.2f", account.getBalance()) + ")");
-                });
             }
 
             HBox accountBox = new HBox(10);
@@ -214,37 +221,10 @@ public class CustomerDashboardController {
                         return;
                     }
 
-                    // Extract account number from combo box (format: "ACC1001 - SAVINGS (BWP 1000.00)")
-                    String accountNumber = accountComboBox.getValue().split(" - ")[0];
+                    Account selectedAccount = accountComboBox.getValue().getAccount();
 
-                    // Find the actual account object from currentUser
-                    Account selectedAccount = findAccountByNumber(accountNumber);
-                    if (selectedAccount == null) {
-                        messageLabel.setText("Error: Account not found");
-                        messageLabel.setStyle("-fx-text-fill: red;");
-                        return;
-                    }
-
-                    // Perform the deposit on the actual account object
-                    selectedAccount.deposit(amount);
-
-                    // Also update through bank service if needed for transaction recording
-                    bankService.deposit(accountNumber, amount);
-
-                    // Update the combo box to reflect new balance
-                    accountComboBox.getItems().clear();
-                    currentUser.getAccounts().forEach(account -> {
-                        accountComboBox.getItems().add(account.getAccountNumber() + " - " + account.getAccountType() +
-                                " (BWP " + String.format("%.2f", account.getBalance()) + ")");
-                    });
-
-                    // Select the same account again
-                    for (String item : accountComboBox.getItems()) {
-                        if (item.startsWith(accountNumber)) {
-                            accountComboBox.setValue(item);
-                            break;
-                        }
-                    }
+                    // The combo box cell follows the balance change event
+                    bankService.deposit(selectedAccount.getAccountNumber(), amount);
 
                     messageLabel.setText("✓ Deposit successful!\nAmount: BWP " + String.format("%.2f", amount) +
                             "\nNew Balance: BWP " + String.format("%.2f", selectedAccount.getBalance()));
@@ -278,7 +258,7 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error opening deposit window: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("deposit.window.failed", e);
         }
     }
 
@@ -296,29 +276,20 @@ public class CustomerDashboardController {
             Label instruction = new Label("Enter withdrawal details below:");
             instruction.setStyle("-fx-font-weight: bold;");
 
-            ComboBox<String> accountComboBox = new ComboBox<>();
+            // Only show accounts that allow withdrawals (not Savings)
+            ComboBox<AccountViewModel> accountComboBox = createAccountComboBox(new FilteredList<>(
+                    customerViewModel.getAccounts(), account -> !(account.getAccount() instanceof SavingsAccount)), true);
             TextField amountField = new TextField();
             Label messageLabel = new Label();
             messageLabel.setStyle("-fx-font-weight: bold; -fx-wrap-text: true;");
             messageLabel.setPrefHeight(60);
 
-            // Populate account combo box with withdrawable accounts
             if (currentUser.getAccounts().isEmpty()) {
                 accountComboBox.setPromptText("No accounts available");
                 accountComboBox.setDisable(true);
-            } else {
-                currentUser.getAccounts().forEach(account -> {
-                    // Only show accounts that allow withdrawals (not Savings)
-                    if (!(account instanceof SavingsAccount)) {
-                        accountComboBox.getItems().add(account.getAccountNumber() + " - " + account.getAccountType() +
-                                " (BWP " + String.format("%.2f", account.getBalance()) + ")");
-                    }
-                });
-
-                if (accountComboBox.getItems().isEmpty()) {
-                    accountComboBox.setPromptText("No withdrawable accounts");
-                    accountComboBox.setDisable(true);
-                }
+            } else if (accountComboBox.getItems().isEmpty()) {
+                accountComboBox.setPromptText("No withdrawable accounts");
+                accountComboBox.setDisable(true);
             }
 
             HBox accountBox = new HBox(10);
@@ -355,16 +326,7 @@ public class CustomerDashboardController {
                         return;
                     }
 
-                    // Extract account number from combo box
-                    String accountNumber = accountComboBox.getValue().split(" - ")[0];
-
-                    // Find the actual account object from currentUser
-                    Account selectedAccount = findAccountByNumber(accountNumber);
-                    if (selectedAccount == null) {
-                        messageLabel.setText("Error: Account not found");
-                        messageLabel.setStyle("-fx-text-fill: red;");
-                        return;
-                    }
+                    Account selectedAccount = accountComboBox.getValue().getAccount();
 
                     // Check if sufficient funds
                     if (selectedAccount.getBalance() < amount) {
@@ -374,28 +336,8 @@ public class CustomerDashboardController {
                         return;
                     }
 
-                    // Perform the withdrawal on the actual account object
-                    selectedAccount.withdraw(amount);
-
-                    // Also update through bank service if needed for transaction recording
-                    bankService.withdraw(accountNumber, amount);
-
-                    // Update the combo box to reflect new balance
-                    accountComboBox.getItems().clear();
-                    currentUser.getAccounts().forEach(account -> {
-                        if (!(account instanceof SavingsAccount)) {
-                            accountComboBox.getItems().add(account.getAccountNumber() + " - " + account.getAccountType() +
-                                    " (BWP " + String.format("%.2f", account.getBalance()) + ")");
-                        }
-                    });
-
-                    // Select the same account again
-                    for (String item : accountComboBox.getItems()) {
-                        if (item.startsWith(accountNumber)) {
-                            accountComboBox.setValue(item);
-                            break;
-                        }
-                    }
+                    // The combo box cell follows the balance change event
+                    bankService.withdraw(selectedAccount.getAccountNumber(), amount);
 
                     messageLabel.setText("✓ Withdrawal successful!\nAmount: BWP " + String.format("%.2f", amount) +
                             "\nNew Balance: BWP " + String.format("%.2f", selectedAccount.getBalance()));
@@ -429,7 +371,7 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error opening withdrawal window: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("withdraw.window.failed", e);
         }
     }
 
@@ -444,42 +386,29 @@ public class CustomerDashboardController {
             Label title = new Label("ACCOUNT DETAILS");
             title.setStyle("-fx-font-size: 18; -fx-font-weight: bold; -fx-text-fill: #2E8B57;");
 
-            ComboBox<String> accountComboBox = new ComboBox<>();
+            ComboBox<AccountViewModel> accountComboBox = createAccountComboBox(customerViewModel.getAccounts(), false);
             TextArea detailsArea = new TextArea();
             detailsArea.setEditable(false);
             detailsArea.setPrefRowCount(10);
             detailsArea.setPrefWidth(500);
             detailsArea.setStyle("-fx-font-family: 'Courier New'; -fx-font-size: 12;");
 
-            // Populate account combo box
-            if (currentUser.getAccounts().isEmpty()) {
+            // Add listener to update details when account selection changes
+            accountComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+                if (newVal != null) {
+                    detailsArea.setText(newVal.getAccount().getAccountDetails());
+                }
+            });
+
+            if (accountComboBox.getItems().isEmpty()) {
                 accountComboBox.setPromptText("No accounts available");
                 accountComboBox.setDisable(true);
                 detailsArea.setText("No accounts found.");
             } else {
-                currentUser.getAccounts().forEach(account -> {
-                    accountComboBox.getItems().add(account.getAccountNumber() + " - " + account.getAccountType());
-                });
-
                 // Show first account details by default
-                if (!currentUser.getAccounts().isEmpty()) {
-                    accountComboBox.setValue(accountComboBox.getItems().get(0));
-                    Account firstAccount = currentUser.getAccounts().get(0);
-                    detailsArea.setText(firstAccount.getAccountDetails());
-                }
+                accountComboBox.setValue(accountComboBox.getItems().get(0));
             }
 
-            // Add listener to update details when account selection changes
-            accountComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
-                if (newVal != null) {
-                    String accountNumber = newVal.split(" - ")[0];
-                    Account account = findAccountByNumber(accountNumber);
-                    if (account != null) {
-                        detailsArea.setText(account.getAccountDetails());
-                    }
-                }
-            });
-
             HBox accountBox = new HBox(10);
             accountBox.getChildren().addAll(new Label("Select Account:"), accountComboBox);
 
@@ -500,7 +429,7 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error loading account details: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("account.details.failed", e);
         }
     }
 
@@ -552,7 +481,7 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error loading transaction history: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("history.view.failed", e);
         }
     }
 
@@ -583,13 +512,11 @@ public class CustomerDashboardController {
             sb.append("Address: ").append(currentUser.getAddress()).append("\n\n");
             sb.append("Account Summary:\n");
             sb.append("────────────────\n");
-            sb.append("Total Accounts: ").append(currentUser.getAccounts().size()).append("\n");
+            BalanceAggregates.Totals totals = bankService.getCustomerTotals(currentUser.getCustomerId());
+            sb.append("Total Accounts: ").append(totals.getAccountCount()).append("\n");
 
             if (!currentUser.getAccounts().isEmpty()) {
-                double totalBalance = currentUser.getAccounts().stream()
-                        .mapToDouble(Account::getBalance)
-                        .sum();
-                sb.append("Total Balance: BWP ").append(String.format("%.2f", totalBalance)).append("\n\n");
+                sb.append("Total Posted Balance: BWP ").append(String.format("%.2f", totals.getBalance())).append("\n\n");
 
                 sb.append("Accounts Breakdown:\n");
                 currentUser.getAccounts().forEach(account -> {
@@ -620,11 +547,14 @@ public class CustomerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error loading customer information: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("customer.info.failed", e);
         }
     }
 
     private void logout() {
+        if (customerViewModel != null) {
+            customerViewModel.dispose();
+        }
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("LoginView.fxml"));
             Parent root = loader.load();
@@ -637,16 +567,16 @@ public class CustomerDashboardController {
             primaryStage.setTitle("Botswana National Bank - Login");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("logout.failed", e);
         }
     }
 
-    // Helper method to find account by number from currentUser's accounts
-    private Account findAccountByNumber(String accountNumber) {
-        return currentUser.getAccounts().stream()
-                .filter(account -> account.getAccountNumber().equals(accountNumber))
-                .findFirst()
-                .orElse(null);
+    // Items are the customer's observable accounts, so rows update in place when a balance changes
+    private ComboBox<AccountViewModel> createAccountComboBox(ObservableList<AccountViewModel> accounts, boolean showBalance) {
+        ComboBox<AccountViewModel> comboBox = new ComboBox<>(accounts);
+        comboBox.setCellFactory(AccountViewModel.cellFactory(showBalance));
+        comboBox.setButtonCell(new AccountViewModel.AccountCell(showBalance));
+        return comboBox;
     }
 
     private HBox createFormField(String label, Control field) {
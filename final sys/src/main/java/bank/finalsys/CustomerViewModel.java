@@ -0,0 +1,83 @@
+package bank.finalsys;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Observable list of a customer's accounts, kept current from BankService change events.
+// A balance change updates that account's property in place; a new account is appended
+// and a closed one removed.
+public class CustomerViewModel {
+    private final BankService bankService;
+    private final BankCustomer customer;
+    private final ObservableList<AccountViewModel> accounts = FXCollections.observableArrayList();
+    private final Map<String, AccountViewModel> accountsByNumber = new HashMap<>();
+    private final List<BankEventBus.Subscription<?>> subscriptions;
+
+    public CustomerViewModel(BankService bankService, BankCustomer customer) {
+        this.bankService = bankService;
+        this.customer = customer;
+        for (Account account : customer.getAccounts()) {
+            addAccount(account);
+        }
+        this.subscriptions = List.of(
+                bankService.subscribe(BankEvent.BalanceChanged.class, event -> {
+                    if (customer.getCustomerId().equals(event.getCustomerId())) {
+                        Platform.runLater(() -> balanceChanged(event.getAccountNumber()));
+                    }
+                }),
+                bankService.subscribe(BankEvent.AccountOpened.class, event -> {
+                    if (customer.getCustomerId().equals(event.getCustomerId())) {
+                        Platform.runLater(() -> accountOpened(event.getAccountNumber()));
+                    }
+                }),
+                bankService.subscribe(BankEvent.AccountClosed.class, event -> {
+                    if (customer.getCustomerId().equals(event.getCustomerId())) {
+                        Platform.runLater(() -> accountClosed(event.getAccountNumber()));
+                    }
+                }));
+    }
+
+    public BankCustomer getCustomer() { return customer; }
+
+    public ObservableList<AccountViewModel> getAccounts() {
+        return accounts;
+    }
+
+    public void dispose() {
+        for (BankEventBus.Subscription<?> subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    private void balanceChanged(String accountNumber) {
+        AccountViewModel viewModel = accountsByNumber.get(accountNumber);
+        if (viewModel != null) {
+            viewModel.refresh();
+        }
+    }
+
+    private void accountOpened(String accountNumber) {
+        Account account = bankService.findAccount(accountNumber);
+        if (account != null && !accountsByNumber.containsKey(accountNumber)) {
+            addAccount(account);
+        }
+    }
+
+    private void accountClosed(String accountNumber) {
+        AccountViewModel viewModel = accountsByNumber.remove(accountNumber);
+        if (viewModel != null) {
+            accounts.remove(viewModel);
+        }
+    }
+
+    private void addAccount(Account account) {
+        AccountViewModel viewModel = new AccountViewModel(account);
+        accountsByNumber.put(account.getAccountNumber(), viewModel);
+        accounts.add(viewModel);
+    }
+}
\ No newline at end of file
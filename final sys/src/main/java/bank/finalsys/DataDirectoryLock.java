@@ -0,0 +1,93 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Exclusive lock over the data files. Other processes are kept out by an OS file
+// lock; other BankService instances in this JVM by a monitor per lock file, because
+// the OS lock is held per process. The lock file stores a generation number that
+// every writer bumps, so a reader can tell whether anyone wrote since it last looked.
+public final class DataDirectoryLock implements AutoCloseable {
+    private static final Map<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock jvmLock;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private long generation;
+
+    private DataDirectoryLock(ReentrantLock jvmLock, FileChannel channel, FileLock lock, long generation) {
+        this.jvmLock = jvmLock;
+        this.channel = channel;
+        this.lock = lock;
+        this.generation = generation;
+    }
+
+    public static DataDirectoryLock acquire(String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(path, key -> new ReentrantLock());
+        jvmLock.lock();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock = channel.lock();
+            return new DataDirectoryLock(jvmLock, channel, lock, readGeneration(channel));
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Called by a writer once its files are on disk
+    public long bumpGeneration() throws IOException {
+        return adoptGeneration(generation + 1);
+    }
+
+    // Called by a standby mirroring a primary whose generation it has caught up with
+    long adoptGeneration(long newGeneration) throws IOException {
+        generation = newGeneration;
+        byte[] bytes = Long.toString(generation).getBytes(StandardCharsets.UTF_8);
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(bytes), 0);
+        channel.force(false);
+        return generation;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+            channel.close();
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+
+    private static long readGeneration(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 32));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // keep reading
+        }
+        try {
+            return Long.parseLong(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,188 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Streams customers or accounts with their balances as CSV or JSON lines. Rows are
+// written one at a time as the customer list is walked, and each account is read
+// under its own lock only long enough to copy its balance. Balances are those at the
+// moment the export began: accounts keep their pre-export balance on first change
+// (see Account.preserveForSnapshot), and accounts opened since are left out.
+public class DataExporter {
+    private static final BankLogger LOG = BankLogger.getLogger(DataExporter.class);
+
+    // Accounts keep a single preserved balance, so snapshots are taken one at a time
+    private static final Object SNAPSHOT_LOCK = new Object();
+
+    public enum Format { CSV, JSONL }
+
+    public enum Dataset { CUSTOMERS, ACCOUNTS }
+
+    private final Format format;
+    private final String branch;
+    private final String accountType;
+
+    // Null branch or account type exports every branch or type
+    public DataExporter(Format format, String branch, String accountType) {
+        this.format = format;
+        this.branch = branch;
+        this.accountType = accountType == null ? null : accountType.toUpperCase();
+    }
+
+    public Report export(Dataset dataset, List<BankCustomer> customers, Writer out) throws IOException {
+        long startTime = System.nanoTime();
+        long rows = 0;
+        synchronized (SNAPSHOT_LOCK) {
+            long snapshot = Account.beginSnapshot();
+            if (format == Format.CSV) {
+                out.write(dataset == Dataset.CUSTOMERS
+                        ? "customerId,firstName,surname,address,accounts,totalBalance"
+                        : "accountNumber,accountType,branch,customerId,balance");
+                out.write('\n');
+            }
+            for (BankCustomer customer : customers) {
+                if (dataset == Dataset.CUSTOMERS) {
+                    rows += writeCustomer(customer, snapshot, out);
+                } else {
+                    rows += writeAccounts(customer, snapshot, out);
+                }
+            }
+            out.flush();
+        }
+        Report report = new Report(dataset, rows, System.nanoTime() - startTime);
+        LOG.info("export.completed", "dataset", dataset, "format", format, "branch", branch, "type", accountType,
+                "rows", rows, "millis", report.getElapsedMillis());
+        return report;
+    }
+
+    private int writeAccounts(BankCustomer customer, long snapshot, Writer out) throws IOException {
+        int rows = 0;
+        for (Account account : customer.getAccounts()) {
+            if (!matches(account)) {
+                continue;
+            }
+            double balance;
+            synchronized (account) {
+                balance = account.getSnapshotBalance(snapshot);
+            }
+            if (Double.isNaN(balance)) {
+                continue;
+            }
+            String[] names = { "accountNumber", "accountType", "branch", "customerId", "balance" };
+            Object[] values = { account.getAccountNumber(), account.getAccountType(), account.getBranch(),
+                    customer.getCustomerId(), balance };
+            writeRow(names, values, out);
+            rows++;
+        }
+        return rows;
+    }
+
+    // With a branch or type filter, only customers holding a matching account are listed
+    // and their totals cover the matching accounts only
+    private int writeCustomer(BankCustomer customer, long snapshot, Writer out) throws IOException {
+        int accounts = 0;
+        double total = 0;
+        for (Account account : customer.getAccounts()) {
+            if (!matches(account)) {
+                continue;
+            }
+            double balance;
+            synchronized (account) {
+                balance = account.getSnapshotBalance(snapshot);
+            }
+            if (!Double.isNaN(balance)) {
+                accounts++;
+                total += balance;
+            }
+        }
+        if (accounts == 0 && (branch != null || accountType != null)) {
+            return 0;
+        }
+        String[] names = { "customerId", "firstName", "surname", "address", "accounts", "totalBalance" };
+        Object[] values = { customer.getCustomerId(), customer.getFirstName(), customer.getSurname(),
+                customer.getAddress(), accounts, total };
+        writeRow(names, values, out);
+        return 1;
+    }
+
+    private boolean matches(Account account) {
+        return (branch == null || branch.equalsIgnoreCase(account.getBranch()))
+                && (accountType == null || accountType.equals(account.getAccountType()));
+    }
+
+    private void writeRow(String[] names, Object[] values, Writer out) throws IOException {
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                out.write(values[i] instanceof String ? csvField((String) values[i]) : String.valueOf(values[i]));
+            }
+        } else {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                out.write('"');
+                out.write(names[i]);
+                out.write("\":");
+                out.write(values[i] instanceof String ? jsonString((String) values[i]) : String.valueOf(values[i]));
+            }
+            out.write('}');
+        }
+        out.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static class Report {
+        private final Dataset dataset;
+        private final long rowCount;
+        private final long elapsedNanos;
+
+        private Report(Dataset dataset, long rowCount, long elapsedNanos) {
+            this.dataset = dataset;
+            this.rowCount = rowCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowCount() { return rowCount; }
+        public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+        @Override
+        public String toString() {
+            return "Exported " + rowCount + " " + dataset.toString().toLowerCase() + " rows in " + getElapsedMillis() + " ms";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Hands out sequential IDs such as ACC1001 or CUST1001. IDs come from a block
+// reserved durably in the ID file under an OS file lock, so allocation inside a
+// block is a single CAS and concurrent processes never receive the same ID.
+// Unused IDs of a block are skipped after a restart.
+public class IdAllocator {
+    private static final int BLOCK_SIZE = 100;
+    // FileChannel locks are held per JVM, so allocators in the same process also share a monitor
+    private static final Object FILE_MUTEX = new Object();
+
+    private final Path path;
+    private final String prefix;
+    private final LongSupplier initialFloor;
+    private final AtomicLong next = new AtomicLong();
+    private volatile long limit;
+
+    // initialFloor is only consulted when the ID file has no entry for this prefix yet
+    public IdAllocator(String fileName, String prefix, LongSupplier initialFloor) {
+        this.path = Paths.get(fileName);
+        this.prefix = prefix;
+        this.initialFloor = initialFloor;
+    }
+
+    public String nextId() {
+        return prefix + nextNumber();
+    }
+
+    public long nextNumber() {
+        while (true) {
+            long current = next.get();
+            if (current < limit) {
+                if (next.compareAndSet(current, current + 1)) {
+                    return current;
+                }
+            } else {
+                reserveBlock(current);
+            }
+        }
+    }
+
+    private synchronized void reserveBlock(long exhausted) {
+        if (next.get() != exhausted || exhausted < limit) {
+            return; // another thread already reserved a fresh block
+        }
+        synchronized (FILE_MUTEX) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                Map<String, Long> marks = readMarks(channel);
+                Long mark = marks.get(prefix);
+                long start = mark != null ? mark : initialFloor.getAsLong();
+                start = Math.max(start, exhausted);
+                marks.put(prefix, start + BLOCK_SIZE);
+                writeMarks(channel, marks);
+
+                // Publish next before limit so no thread can take an ID outside the new block
+                next.set(start);
+                limit = start + BLOCK_SIZE;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to reserve " + prefix + " IDs", e);
+            }
+        }
+    }
+
+    private Map<String, Long> readMarks(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // keep reading
+        }
+        Map<String, Long> marks = new LinkedHashMap<>();
+        for (String line : new String(buffer.array(), StandardCharsets.UTF_8).split("\\R")) {
+            String[] parts = line.trim().split("\\|");
+            if (parts.length >= 2) {
+                try {
+                    marks.put(parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    // Ignore malformed entries
+                }
+            }
+        }
+        return marks;
+    }
+
+    private void writeMarks(FileChannel channel, Map<String, Long> marks) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        marks.forEach((key, value) -> sb.append(key).append('|').append(value).append(System.lineSeparator()));
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)), 0);
+        channel.force(true);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package bank.finalsys;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Remembers the result of each keyed posting for a limited time window so that
+// a retried request returns the original result instead of posting twice. Entries
+// leave only when they expire, oldest result first, whatever order they were added
+// in; a size cap would let a large standing-order batch evict its own keys.
+public class IdempotencyCache {
+    private static final BankLogger LOG = BankLogger.getLogger(IdempotencyCache.class);
+
+    private final long windowMillis;
+    private final Map<String, Transaction> entries = new HashMap<>();
+    // Every entry put, by the time of its result; one replaced since is skipped when it expires
+    private final PriorityQueue<Map.Entry<String, Transaction>> byExpiry = new PriorityQueue<>(
+            Comparator.comparingLong((Map.Entry<String, Transaction> entry) -> entry.getValue().getTimestamp()));
+
+    public IdempotencyCache(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public synchronized Transaction get(String requestId, long now) {
+        evictExpired(now);
+        return entries.get(requestId);
+    }
+
+    public synchronized void put(String requestId, Transaction result) {
+        entries.put(requestId, result);
+        byExpiry.add(Map.entry(requestId, result));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictExpired(long now) {
+        while (!byExpiry.isEmpty() && now - byExpiry.peek().getValue().getTimestamp() > windowMillis) {
+            Map.Entry<String, Transaction> oldest = byExpiry.poll();
+            entries.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    public static void validateRequestId(String requestId) {
+        if (requestId.isBlank() || requestId.contains("|") || requestId.contains("\n")) {
+            throw new IllegalArgumentException("Invalid request ID");
+        }
+    }
+
+    public synchronized void save(String fileName) {
+        evictExpired(System.currentTimeMillis());
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Transaction> entry : entries.entrySet()) {
+                writer.write(entry.getKey() + "|" + entry.getValue().toFileString());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOG.error("idempotency.save.failed", e);
+        }
+    }
+
+    public synchronized void load(String fileName) {
+        Path path = Paths.get(fileName);
+        try {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int separator = line.indexOf('|');
+                if (separator <= 0) continue;
+                // Merging reloads the file; a key already held has the same result
+                String requestId = line.substring(0, separator);
+                Transaction result = Transaction.fromFileString(line.substring(separator + 1).trim());
+                if (result != null && !entries.containsKey(requestId)) {
+                    put(requestId, result);
+                }
+            }
+            evictExpired(System.currentTimeMillis());
+        } catch (NoSuchFileException e) {
+            // Nothing cached yet
+        } catch (IOException e) {
+            LOG.error("idempotency.load.failed", e);
+        }
+    }
+}
\ No newline at end of file
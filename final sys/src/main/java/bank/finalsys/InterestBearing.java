@@ -1,6 +1,8 @@
 package bank.finalsys;
 
 public interface InterestBearing {
-    void addInterest();
+    // Interest accrues daily on read. It is only posted through BankService, which journals it.
     double getInterestRate();
+    double getAccruedInterest(long now);
+    double postAccruedInterest(long now);
 }
\ No newline at end of file
@@ -5,10 +5,25 @@ public class InvestmentAccount extends Account implements InterestBearing {
     private static final double INTEREST_RATE = 0.05; // 5% monthly as per PDF
 
     public InvestmentAccount(String accountNumber, double balance, String branch, BankCustomer customer) {
-        super(accountNumber, Math.max(balance, MIN_DEPOSIT), branch, customer);
-        if (balance < MIN_DEPOSIT) {
+        super(accountNumber, validateOpeningDeposit(balance), branch, customer);
+    }
+
+    private InvestmentAccount(String accountNumber, String branch, BankCustomer customer) {
+        super(accountNumber, 0, branch, customer);
+    }
+
+    // Restores a saved account, whose balance may have been withdrawn below the opening minimum
+    static InvestmentAccount restore(String accountNumber, double balance, String branch, BankCustomer customer) {
+        InvestmentAccount account = new InvestmentAccount(accountNumber, branch, customer);
+        account.balance = balance;
+        return account;
+    }
+
+    public static double validateOpeningDeposit(double deposit) {
+        if (!(deposit >= MIN_DEPOSIT)) {
             throw new IllegalArgumentException("Investment account requires minimum deposit of BWP " + MIN_DEPOSIT);
         }
+        return deposit;
     }
 
     @Override
@@ -18,17 +33,26 @@ public class InvestmentAccount extends Account implements InterestBearing {
 
     @Override
     public void withdraw(double amount) {
-        if (amount > 0 && amount <= getBalance()) {
-            setBalance(getBalance() - amount);
+        if (amount > 0 && amount <= balance) {
+            setBalance(balance - amount);
         } else {
             throw new IllegalArgumentException("Invalid withdrawal amount or insufficient funds");
         }
     }
 
     @Override
-    public void addInterest() {
-        double interest = getBalance() * INTEREST_RATE;
-        setBalance(getBalance() + interest);
+    public double getBalance() {
+        return balance + getAccruedInterest(System.currentTimeMillis());
+    }
+
+    @Override
+    public double getAccruedInterest(long now) {
+        return accruedInterest(INTEREST_RATE, now);
+    }
+
+    @Override
+    public double postAccruedInterest(long now) {
+        return postAccruedInterest(INTEREST_RATE, now);
     }
 
     @Override
@@ -8,6 +8,8 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 
 public class LoginController {
+    private static final BankLogger LOG = BankLogger.getLogger(LoginController.class);
+
     @FXML private TextField menuChoiceField;
     @FXML private TextField usernameField;
     @FXML private PasswordField passwordField;
@@ -19,7 +21,7 @@ public class LoginController {
     private Stage primaryStage;
 
     public LoginController() {
-        this.bankService = new BankService();
+        this.bankService = Main.getBankService();
     }
 
     public void setPrimaryStage(Stage primaryStage) {
@@ -110,7 +112,7 @@ public class LoginController {
 
         } catch (Exception e) {
             messageLabel.setText("Error loading dashboard: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("dashboard.load.failed", e);
         }
     }
 }
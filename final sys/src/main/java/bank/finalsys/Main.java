@@ -7,6 +7,8 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class Main extends Application {
+    // One service per process, so every window works on the same accounts and sees the same change events
+    private static BankService bankService;
 
     public static void main(String[] args) {
         launch(args);
@@ -25,4 +27,11 @@ public class Main extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
+
+    static synchronized BankService getBankService() {
+        if (bankService == null) {
+            bankService = new BankService();
+        }
+        return bankService;
+    }
 }
\ No newline at end of file
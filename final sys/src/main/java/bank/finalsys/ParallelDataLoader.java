@@ -0,0 +1,249 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Loads tellers, customers and accounts concurrently. Each file is split into
+// line-aligned byte ranges that are parsed on separate threads; accounts are
+// linked to their customers in a final join phase once every range is parsed.
+public class ParallelDataLoader {
+    private static final BankLogger LOG = BankLogger.getLogger(ParallelDataLoader.class);
+
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private final int parallelism;
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    public ParallelDataLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Result load(String tellersFile, String customersFile, String accountsFile) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "bank-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<List<BankTeller>> tellersFuture =
+                    parseFile(Paths.get(tellersFile), BankTeller::fromFileString, executor);
+            CompletableFuture<List<BankCustomer>> customersFuture =
+                    parseFile(Paths.get(customersFile), BankCustomer::fromFileString, executor);
+            List<CompletableFuture<List<AccountRecord>>> accountChunks =
+                    parseChunks(Paths.get(accountsFile), AccountRecord::parse, executor);
+
+            CompletableFuture<Map<String, BankCustomer>> customerIndex = customersFuture.thenApply(list -> {
+                Map<String, BankCustomer> index = new HashMap<>(list.size() * 2);
+                for (BankCustomer customer : list) {
+                    index.putIfAbsent(customer.getCustomerId(), customer);
+                }
+                return index;
+            });
+
+            // Account objects are built per range as soon as the customer index is ready
+            List<CompletableFuture<List<Account>>> accountFutures = new ArrayList<>();
+            for (CompletableFuture<List<AccountRecord>> chunk : accountChunks) {
+                accountFutures.add(chunk.thenCombineAsync(customerIndex, this::createAccounts, executor));
+            }
+
+            // Join phase: link accounts to customers in file order
+            List<Account> accounts = new ArrayList<>();
+            for (CompletableFuture<List<Account>> future : accountFutures) {
+                for (Account account : future.join()) {
+                    // Closed accounts are loaded as tombstones only
+                    if (!account.isClosed()) {
+                        account.getCustomer().addAccount(account);
+                    }
+                    accounts.add(account);
+                }
+            }
+
+            if (accountChunks.isEmpty()) {
+                LOG.info("accounts.file.missing", "file", accountsFile);
+            }
+            LOG.info("load.completed", "tellers", tellersFuture.join().size(), "customers", customersFuture.join().size(),
+                    "accounts", accounts.size(), "errors", errorCount.get());
+            return new Result(tellersFuture.join(), customersFuture.join(), accounts);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<Account> createAccounts(List<AccountRecord> records, Map<String, BankCustomer> customerIndex) {
+        List<Account> created = new ArrayList<>(records.size());
+        for (AccountRecord record : records) {
+            BankCustomer customer = customerIndex.get(record.getCustomerId());
+            if (customer == null) {
+                errorCount.incrementAndGet();
+                LOG.warn("account.customer.missing", "account", record.getAccountNumber(), "customer", record.getCustomerId());
+                continue;
+            }
+            try {
+                Account account = record.toAccount(customer);
+                if (account != null) {
+                    created.add(account);
+                } else {
+                    errorCount.incrementAndGet();
+                    LOG.warn("account.create.failed", "account", record.getAccountNumber());
+                }
+            } catch (IllegalArgumentException e) {
+                errorCount.incrementAndGet();
+                LOG.warn("account.create.failed", "account", record.getAccountNumber(), "reason", e.getMessage());
+            }
+        }
+        return created;
+    }
+
+    private <T> CompletableFuture<List<T>> parseFile(Path path, Function<String, T> parser, ExecutorService executor) {
+        List<CompletableFuture<List<T>>> chunks = parseChunks(path, parser, executor);
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> all = new ArrayList<>();
+            for (CompletableFuture<List<T>> chunk : chunks) {
+                all.addAll(chunk.join());
+            }
+            return all;
+        });
+    }
+
+    private <T> List<CompletableFuture<List<T>>> parseChunks(Path path, Function<String, T> parser,
+                                                           ExecutorService executor) {
+        long[] boundaries;
+        try {
+            boundaries = splitIntoRanges(path);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        } catch (IOException e) {
+            LOG.error("file.read.failed", e, "file", path);
+            return new ArrayList<>();
+        }
+
+        List<CompletableFuture<List<T>>> chunks = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            long start = boundaries[i];
+            long end = boundaries[i + 1];
+            chunks.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return parseRange(path, start, end, parser);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        return chunks;
+    }
+
+    // Splits the file into roughly equal ranges, moving each cut forward to just after a newline
+    private long[] splitIntoRanges(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new long[] { 0 };
+            }
+            long chunkCount = Math.max(1, Math.min(parallelism, size / MIN_CHUNK_BYTES));
+            chunkCount = Math.max(chunkCount, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+            long chunkSize = size / chunkCount;
+
+            List<Long> cuts = new ArrayList<>();
+            cuts.add(0L);
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            for (long i = 1; i < chunkCount; i++) {
+                long position = Math.max(i * chunkSize, cuts.get(cuts.size() - 1));
+                long cut = -1;
+                while (cut < 0 && position < size) {
+                    probe.clear();
+                    int read = channel.read(probe, position);
+                    if (read <= 0) break;
+                    for (int j = 0; j < read; j++) {
+                        if (probe.get(j) == '\n') {
+                            cut = position + j + 1;
+                            break;
+                        }
+                    }
+                    position += read;
+                }
+                if (cut < 0 || cut >= size) break;
+                if (cut > cuts.get(cuts.size() - 1)) cuts.add(cut);
+            }
+            cuts.add(size);
+
+            long[] boundaries = new long[cuts.size()];
+            for (int i = 0; i < boundaries.length; i++) {
+                boundaries[i] = cuts.get(i);
+            }
+            return boundaries;
+        }
+    }
+
+    private <T> List<T> parseRange(Path path, long start, long end, Function<String, T> parser) throws IOException {
+        List<T> parsed = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            byte[] line = new byte[256];
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    addParsedLine(parsed, line, length, parser);
+                    length = 0;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = b;
+                }
+            }
+            addParsedLine(parsed, line, length, parser);
+        }
+        return parsed;
+    }
+
+    private <T> void addParsedLine(List<T> parsed, byte[] line, int length, Function<String, T> parser) {
+        String text = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        T value;
+        try {
+            value = parser.apply(text);
+        } catch (IllegalArgumentException e) {
+            value = null;
+        }
+        if (value != null) {
+            parsed.add(value);
+        } else {
+            errorCount.incrementAndGet();
+            LOG.warn("record.invalid", "record", text);
+        }
+    }
+
+    public static class Result {
+        private final List<BankTeller> tellers;
+        private final List<BankCustomer> customers;
+        private final List<Account> accounts;
+
+        private Result(List<BankTeller> tellers, List<BankCustomer> customers, List<Account> accounts) {
+            this.tellers = tellers;
+            this.customers = customers;
+            this.accounts = accounts;
+        }
+
+        public List<BankTeller> getTellers() { return tellers; }
+        public List<BankCustomer> getCustomers() { return customers; }
+        public List<Account> getAccounts() { return accounts; }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,444 @@
+package bank.finalsys;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Primary side of log shipping. Each committed save is diffed against the state
+// last published and the changed records are streamed to every connected standby
+// as "seq|commitMillis|KIND|payload" lines, and records missing from the save are
+// shipped as REMOVED so compacted rows do not outlive the primary on a standby.
+// The journal is shipped by tailing transactions.txt from the epoch and offset the
+// standby reports when it connects; a standby from an earlier epoch gets the whole hot
+// journal again. Archive segments are shipped whole, followed by their index line, and a
+// rotation is announced once its segments are shipped.
+// Enabled with -Dbank.replication.port=<port>; listens on the loopback address only.
+public class ReplicationPublisher {
+    private static final BankLogger LOG = BankLogger.getLogger(ReplicationPublisher.class);
+
+    public static final String PORT_PROPERTY = "bank.replication.port";
+    static final String RESET = "RESET";
+    static final String READY = "READY";
+    static final String CUSTOMER = "CUSTOMER";
+    static final String TELLER = "TELLER";
+    static final String ACCOUNT = "ACCOUNT";
+    static final String REMOVED = "REMOVED";
+    static final String JOURNAL = "JOURNAL";
+    static final String JOURNAL_RESET = "JOURNAL_RESET";
+    static final String ROTATED = "ROTATED";
+    static final String ARCHIVE_DATA = "ARCHIVE_DATA";
+    static final String ARCHIVE_INDEX = "ARCHIVE_INDEX";
+    static final String HEARTBEAT = "HEARTBEAT";
+
+    private static final int FOLLOWER_QUEUE_CAPACITY = 65536;
+    private static final long SHIP_PERIOD_MILLIS = 200;
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final int HELLO_TIMEOUT_MILLIS = 5000;
+    private static final int ARCHIVE_CHUNK_BYTES = 48 * 1024;
+    private static ReplicationPublisher shared;
+
+    private final int port;
+    private final Path journal;
+    private final String journalLockFile;
+    private final TransactionArchive archive;
+    // Last published line per key; this is the state a new standby receives as its snapshot
+    private final Map<String, String> customers = new LinkedHashMap<>();
+    private final Map<String, String> tellers = new LinkedHashMap<>();
+    private final Map<String, String> accounts = new LinkedHashMap<>();
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private long sequence;
+    // Bumped whenever segments are indexed; followers re-read the index when it moves
+    private volatile long archiveVersion;
+    private ServerSocket serverSocket;
+
+    private ReplicationPublisher(int port, String journalFile, TransactionArchive archive) {
+        this.port = port;
+        this.journal = Paths.get(journalFile);
+        this.journalLockFile = TransactionLog.lockFileFor(journalFile);
+        this.archive = archive;
+    }
+
+    // Every BankService in the JVM publishes through one listener; null when replication is off
+    public static synchronized ReplicationPublisher fromSystemProperties(String journalFile, TransactionArchive archive) {
+        String port = System.getProperty(PORT_PROPERTY);
+        if (port == null || port.isBlank()) {
+            return null;
+        }
+        if (shared == null) {
+            ReplicationPublisher publisher = new ReplicationPublisher(Integer.parseInt(port.trim()), journalFile, archive);
+            try {
+                publisher.start();
+            } catch (IOException e) {
+                LOG.error("replication.start.failed", e, "port", port);
+                return null;
+            }
+            shared = publisher;
+        }
+        return shared;
+    }
+
+    private void start() throws IOException {
+        serverSocket = new ServerSocket(port, 4, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("replication.listening", "port", port);
+    }
+
+    // Called under the data directory lock after the files were written; the lines are the
+    // complete contents of each file, so a key no longer present has been removed
+    public synchronized void commit(List<String> customerLines, List<String> tellerLines, List<String> accountLines) {
+        long now = System.currentTimeMillis();
+        int changed = publishChanges(customers, CUSTOMER, customerLines, 3, now)
+                + publishChanges(tellers, TELLER, tellerLines, 0, now)
+                + publishChanges(accounts, ACCOUNT, accountLines, 1, now);
+        if (changed > 0 && LOG.isDebugEnabled()) {
+            LOG.debug("replication.committed", "records", changed, "sequence", sequence);
+        }
+    }
+
+    private int publishChanges(Map<String, String> published, String kind, List<String> lines,
+                               int keyField, long now) {
+        int changed = 0;
+        Set<String> present = new HashSet<>();
+        for (String line : lines) {
+            String[] parts = line.split("\\|", keyField + 2);
+            if (parts.length <= keyField) {
+                continue;
+            }
+            present.add(parts[keyField]);
+            String previous = published.put(parts[keyField], line);
+            if (!line.equals(previous)) {
+                send(++sequence + "|" + now + "|" + kind + "|" + line);
+                changed++;
+            }
+        }
+        for (Iterator<String> keys = published.keySet().iterator(); keys.hasNext(); ) {
+            String key = keys.next();
+            if (!present.contains(key)) {
+                keys.remove();
+                send(++sequence + "|" + now + "|" + REMOVED + "|" + kind + "|" + key);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private void send(String message) {
+        for (Follower follower : followers) {
+            if (!follower.queue.offer(message)) {
+                // A standby that cannot keep up is dropped; it resynchronises from a snapshot on reconnect
+                LOG.warn("replication.follower.overflow", "follower", follower.name);
+                follower.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+                // A client that never sends HELLO must not hold up every other standby
+                socket.setSoTimeout(HELLO_TIMEOUT_MILLIS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                // HELLO|epoch|journalOffset|indexEntries; anything else starts the standby afresh
+                String hello = in.readLine();
+                long epoch = -1;
+                long journalOffset = 0;
+                int indexEntries = 0;
+                String[] parts = hello == null ? new String[0] : hello.trim().split("\\|");
+                if (parts.length == 4 && parts[0].equals("HELLO")) {
+                    epoch = Long.parseLong(parts[1]);
+                    journalOffset = Long.parseLong(parts[2]);
+                    indexEntries = Integer.parseInt(parts[3]);
+                }
+                socket.setSoTimeout(0);
+                Follower follower = subscribe(socket, epoch, journalOffset, indexEntries);
+                LOG.info("replication.follower.connected", "follower", follower.name, "epoch", epoch,
+                        "journalOffset", journalOffset, "indexEntries", indexEntries);
+            } catch (SocketTimeoutException e) {
+                LOG.warn("replication.hello.timeout", "follower", socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+            } catch (IOException | NumberFormatException e) {
+                if (!serverSocket.isClosed()) {
+                    LOG.warn("replication.accept.failed", "reason", e.getMessage());
+                }
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private Follower subscribe(Socket socket, long epoch, long journalOffset, int indexEntries) throws IOException {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(journalLockFile)) {
+            return subscribe(socket, lock.getGeneration(), epoch, journalOffset, indexEntries);
+        }
+    }
+
+    // The snapshot is queued under the publisher lock, so no commit can slip in between, and
+    // the caller holds the journal lock, so no rotation can either. An offset is only kept
+    // if it was taken in the current epoch.
+    private synchronized Follower subscribe(Socket socket, long currentEpoch, long epoch, long journalOffset,
+                                            int indexEntries) throws IOException {
+        boolean resume = epoch == currentEpoch && journalOffset <= journalSize();
+        Follower follower = new Follower(socket, currentEpoch, resume ? journalOffset : 0, indexEntries);
+        long now = System.currentTimeMillis();
+        if (!resume) {
+            follower.queue.add("0|" + now + "|" + JOURNAL_RESET + "|" + currentEpoch);
+        }
+        follower.queue.add(sequence + "|" + now + "|" + RESET + "|");
+        for (String line : customers.values()) follower.queue.add(sequence + "|" + now + "|" + CUSTOMER + "|" + line);
+        for (String line : tellers.values()) follower.queue.add(sequence + "|" + now + "|" + TELLER + "|" + line);
+        for (String line : accounts.values()) follower.queue.add(sequence + "|" + now + "|" + ACCOUNT + "|" + line);
+        follower.queue.add(sequence + "|" + now + "|" + READY + "|");
+        followers.add(follower);
+        follower.start();
+        return follower;
+    }
+
+    private long journalSize() throws IOException {
+        try {
+            return Files.size(journal);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    // Called under the journal lock once a rotation moved the first archivedBytes of the
+    // journal into newly indexed segments
+    public synchronized void journalArchived(long epoch, long archivedBytes) {
+        int indexed;
+        try {
+            indexed = archive.getSegments().size();
+        } catch (IOException e) {
+            LOG.error("replication.archive.read.failed", e);
+            indexed = 0;
+        }
+        for (Follower follower : followers) {
+            follower.rotated(epoch, archivedBytes, indexed);
+        }
+        archiveVersion++;
+    }
+
+    // Called after segments were indexed outside a journal rotation, such as statement archives
+    public void archiveUpdated() {
+        archiveVersion++;
+    }
+
+    private synchronized long currentSequence() {
+        return sequence;
+    }
+
+    private class Follower {
+        final Socket socket;
+        final String name;
+        final BlockingQueue<String> queue;
+        // Guarded by the follower. The standby holds the journal up to journalOffset as of
+        // epoch, apart from pendingDrop bytes still to be cut from the front for rotations up
+        // to pendingEpoch, which are announced once indexNeeded index entries are shipped.
+        long journalOffset;
+        long epoch;
+        long pendingEpoch;
+        long pendingDrop;
+        int indexShipped;
+        int indexNeeded;
+        // Only touched by the writer thread
+        long archiveVersionSeen = -1;
+
+        Follower(Socket socket, long epoch, long journalOffset, int indexShipped) {
+            this.socket = socket;
+            this.name = socket.getRemoteSocketAddress().toString();
+            this.epoch = epoch;
+            this.pendingEpoch = epoch;
+            this.journalOffset = journalOffset;
+            this.indexShipped = indexShipped;
+            this.queue = new ArrayBlockingQueue<>(Math.max(FOLLOWER_QUEUE_CAPACITY,
+                    customers.size() + tellers.size() + accounts.size() + 2));
+        }
+
+        void start() {
+            Thread writer = new Thread(this::run, "replication-" + name);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        private void run() {
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                long lastWrite = 0;
+                List<String> batch = new ArrayList<>();
+                while (!socket.isClosed()) {
+                    String first = queue.poll(SHIP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch);
+                    }
+                    int written = write(out, batch);
+                    written += shipArchive(out);
+                    shipJournal(batch);
+                    written += write(out, batch);
+                    if (written == 0 && System.currentTimeMillis() - lastWrite < HEARTBEAT_MILLIS) {
+                        continue;
+                    }
+                    if (written == 0) {
+                        batch.add(currentSequence() + "|" + System.currentTimeMillis() + "|" + HEARTBEAT + "|");
+                        write(out, batch);
+                    }
+                    out.flush();
+                    lastWrite = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                LOG.info("replication.follower.disconnected", "follower", name, "reason", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private int write(BufferedWriter out, List<String> batch) throws IOException {
+            for (String message : batch) {
+                out.write(message);
+                out.newLine();
+            }
+            int written = batch.size();
+            batch.clear();
+            return written;
+        }
+
+        // Lines the standby already holds are cut from the front of its journal; lines it
+        // had not been sent yet are in the new segments
+        synchronized void rotated(long newEpoch, long archivedBytes, int indexed) {
+            pendingDrop += Math.min(journalOffset, archivedBytes);
+            journalOffset = Math.max(0, journalOffset - archivedBytes);
+            pendingEpoch = newEpoch;
+            indexNeeded = Math.max(indexNeeded, indexed);
+        }
+
+        // Ships segments indexed since the standby last heard, the file first and its index
+        // line last, so the standby only indexes complete files. Segment files never change
+        // once indexed, so this runs without the journal lock.
+        private int shipArchive(BufferedWriter out) throws IOException {
+            long version = archiveVersion;
+            if (version == archiveVersionSeen) {
+                return 0;
+            }
+            List<TransactionArchive.Segment> segments = archive.getSegments();
+            int from;
+            synchronized (this) {
+                from = Math.min(indexShipped, segments.size());
+            }
+            int written = 0;
+            byte[] chunk = new byte[ARCHIVE_CHUNK_BYTES];
+            for (int i = from; i < segments.size(); i++) {
+                TransactionArchive.Segment segment = segments.get(i);
+                long now = System.currentTimeMillis();
+                try (InputStream in = Files.newInputStream(archive.getDirectory().resolve(segment.getFileName()))) {
+                    long offset = 0;
+                    int read;
+                    do {
+                        read = in.readNBytes(chunk, 0, chunk.length);
+                        out.write("0|" + now + "|" + ARCHIVE_DATA + "|" + segment.getFileName() + "|" + offset + "|" +
+                                Base64.getEncoder().encodeToString(Arrays.copyOf(chunk, read)));
+                        out.newLine();
+                        offset += read;
+                        written++;
+                    } while (read == chunk.length);
+                }
+                out.write("0|" + now + "|" + ARCHIVE_INDEX + "|" + segment.toFileString());
+                out.newLine();
+                written++;
+                synchronized (this) {
+                    indexShipped = i + 1;
+                }
+            }
+            archiveVersionSeen = version;
+            return written;
+        }
+
+        // Ships complete journal lines written since the last call, after announcing a rotation
+        // whose segments the standby now has. Runs under the journal lock so a rotation cannot
+        // replace the file between reading the offset and reading the bytes.
+        private void shipJournal(List<String> batch) throws IOException {
+            try (DataDirectoryLock lock = DataDirectoryLock.acquire(journalLockFile)) {
+                synchronized (this) {
+                    if (pendingEpoch != epoch && indexShipped >= indexNeeded) {
+                        batch.add("0|" + System.currentTimeMillis() + "|" + ROTATED + "|" + pendingEpoch + "|" + pendingDrop);
+                        epoch = pendingEpoch;
+                        pendingDrop = 0;
+                    }
+                    shipJournalLines(batch);
+                }
+            }
+        }
+
+        private void shipJournalLines(List<String> batch) throws IOException {
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < journalOffset) {
+                    LOG.warn("replication.journal.truncated", "follower", name, "offset", journalOffset, "size", size);
+                    journalOffset = size;
+                }
+                if (size == journalOffset) {
+                    return;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - journalOffset, 1 << 20));
+                channel.read(buffer, journalOffset);
+                int end = buffer.position();
+                while (end > 0 && buffer.get(end - 1) != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                String text = new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+                for (String line : text.split("\\R")) {
+                    if (!line.isEmpty()) {
+                        batch.add("0|" + now + "|" + JOURNAL + "|" + line);
+                    }
+                }
+                journalOffset += end;
+            } catch (NoSuchFileException e) {
+                // Nothing journalled yet
+            }
+        }
+
+        void close() {
+            followers.remove(this);
+            closeQuietly(socket);
+        }
+    }
+}
\ No newline at end of file
@@ -5,10 +5,25 @@ public class SavingsAccount extends Account implements InterestBearing {
     private static final double MIN_DEPOSIT = 50.0;
 
     public SavingsAccount(String accountNumber, double balance, String branch, BankCustomer customer) {
-        super(accountNumber, Math.max(balance, MIN_DEPOSIT), branch, customer);
-        if (balance < MIN_DEPOSIT) {
+        super(accountNumber, validateOpeningDeposit(balance), branch, customer);
+    }
+
+    private SavingsAccount(String accountNumber, String branch, BankCustomer customer) {
+        super(accountNumber, 0, branch, customer);
+    }
+
+    // Restores a saved account; the opening minimum only applies when the account is opened
+    static SavingsAccount restore(String accountNumber, double balance, String branch, BankCustomer customer) {
+        SavingsAccount account = new SavingsAccount(accountNumber, branch, customer);
+        account.balance = balance;
+        return account;
+    }
+
+    public static double validateOpeningDeposit(double deposit) {
+        if (!(deposit >= MIN_DEPOSIT)) {
             throw new IllegalArgumentException("Savings account requires minimum deposit of BWP " + MIN_DEPOSIT);
         }
+        return deposit;
     }
 
     @Override
@@ -22,9 +37,18 @@ public class SavingsAccount extends Account implements InterestBearing {
     }
 
     @Override
-    public void addInterest() {
-        double interest = getBalance() * INTEREST_RATE;
-        setBalance(getBalance() + interest);
+    public double getBalance() {
+        return balance + getAccruedInterest(System.currentTimeMillis());
+    }
+
+    @Override
+    public double getAccruedInterest(long now) {
+        return accruedInterest(INTEREST_RATE, now);
+    }
+
+    @Override
+    public double postAccruedInterest(long now) {
+        return postAccruedInterest(INTEREST_RATE, now);
     }
 
     @Override
@@ -0,0 +1,439 @@
+package bank.finalsys;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Warm standby fed by a primary's ReplicationPublisher. Run it from its own data directory:
+//   java -cp <classes> bank.finalsys.StandbyReplica <port>
+// Records are applied as they arrive and written to the data files every half second.
+// The journal mirrors the primary's hot journal, rotations included, and archive
+// segments are copied into archive/ and indexed once complete.
+// Type "status" to see the replication lag, or "promote" to stop following and take over.
+public class StandbyReplica {
+    private static final BankLogger LOG = BankLogger.getLogger(StandbyReplica.class);
+
+    private static final String CUSTOMERS_FILE = "customers.txt";
+    private static final String ACCOUNTS_FILE = "accounts.txt";
+    private static final String USERS_FILE = "users.txt";
+    private static final String TELLERS_FILE = "tellers.txt";
+    private static final String TRANSACTIONS_FILE = "transactions.txt";
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final String LOCK_FILE = "bank.lock";
+    private static final long FLUSH_PERIOD_MILLIS = 500;
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final long STATUS_PERIOD_MILLIS = 5000;
+
+    private final int port;
+    private final Path dataDirectory;
+    private final Path journal;
+    private final String journalLockFile;
+    private final TransactionArchive archive;
+    private final Map<String, String> customers = new LinkedHashMap<>();
+    private final Map<String, String> tellers = new LinkedHashMap<>();
+    private final Map<String, String> accounts = new LinkedHashMap<>();
+    private final List<String> pendingJournal = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "standby-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean stateChanged;
+    private boolean inSnapshot;
+    private long appliedSequence;
+    private long primarySequence;
+    private long lastCommitMillis;
+    private long lastDelayMillis;
+    private long lastContactMillis;
+    private volatile boolean promoted;
+    private volatile Socket socket;
+
+    public StandbyReplica(int port) {
+        this(port, Paths.get(""));
+    }
+
+    public StandbyReplica(int port, Path dataDirectory) {
+        this.port = port;
+        this.dataDirectory = dataDirectory;
+        this.journal = dataDirectory.resolve(TRANSACTIONS_FILE);
+        this.journalLockFile = TransactionLog.lockFileFor(journal.toString());
+        this.archive = new TransactionArchive(dataDirectory.resolve(ARCHIVE_DIRECTORY));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StandbyReplica <primary replication port>");
+            System.exit(2);
+        }
+        StandbyReplica replica = new StandbyReplica(Integer.parseInt(args[0]));
+        replica.start();
+
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String command;
+        while ((command = console.readLine()) != null) {
+            switch (command.trim().toLowerCase()) {
+                case "status":
+                    System.out.println(replica.status());
+                    break;
+                case "promote":
+                    replica.promote();
+                    System.out.println("Promoted: this process now owns the data directory");
+                    break;
+                case "quit":
+                    replica.stop();
+                    return;
+                default:
+                    System.out.println("Commands: status, promote, quit");
+            }
+        }
+        // Keep serving as primary after promotion even without a console
+        if (replica.promoted) {
+            try {
+                Thread.currentThread().join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void start() {
+        Thread follower = new Thread(this::follow, "standby-follow");
+        follower.setDaemon(true);
+        follower.start();
+        scheduler.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD_MILLIS, FLUSH_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> LOG.info("replication.status", statusFields()),
+                STATUS_PERIOD_MILLIS, STATUS_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        promoted = true;
+        closeSocket();
+        scheduler.shutdown();
+        flush();
+    }
+
+    // Stops following, writes everything received, then opens the directory as a primary
+    public synchronized BankService promote() {
+        if (promoted) {
+            throw new IllegalStateException("Standby already promoted");
+        }
+        promoted = true;
+        closeSocket();
+        scheduler.shutdownNow();
+        flush();
+        LOG.info("replication.promoted", statusFields());
+        BankService bankService = new BankService(dataDirectory);
+        bankService.startInterestTrickle();
+        bankService.startStandingOrders();
+        bankService.startCompaction();
+        return bankService;
+    }
+
+    private void follow() {
+        while (!promoted) {
+            flush();
+            try (Socket connection = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket = connection;
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+                out.write(hello());
+                out.newLine();
+                out.flush();
+                LOG.info("replication.connected", "port", port);
+
+                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                String message;
+                while (!promoted && (message = in.readLine()) != null) {
+                    apply(message);
+                }
+            } catch (IOException e) {
+                if (!promoted) {
+                    LOG.warn("replication.disconnected", "port", port, "reason", e.getMessage());
+                }
+            } finally {
+                socket = null;
+            }
+            sleep(RECONNECT_MILLIS);
+        }
+    }
+
+    private synchronized void apply(String message) throws IOException {
+        if (promoted) {
+            return;
+        }
+        String[] parts = message.split("\\|", 4);
+        if (parts.length < 4) {
+            LOG.warn("replication.record.invalid", "record", message);
+            return;
+        }
+        try {
+            apply(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+        } catch (IllegalArgumentException e) {
+            // One bad record is skipped rather than ending the follower thread
+            LOG.warn("replication.record.invalid", "record", message, "reason", e.getMessage());
+        }
+    }
+
+    private void apply(long sequence, long commitMillis, String kind, String payload) throws IOException {
+        lastContactMillis = System.currentTimeMillis();
+        switch (kind) {
+            case ReplicationPublisher.RESET:
+                customers.clear();
+                tellers.clear();
+                accounts.clear();
+                inSnapshot = true;
+                break;
+            case ReplicationPublisher.READY:
+                inSnapshot = false;
+                stateChanged = true;
+                LOG.info("replication.snapshot.applied", "customers", customers.size(), "accounts", accounts.size());
+                break;
+            case ReplicationPublisher.CUSTOMER:
+                putRecord(customers, payload, 3);
+                break;
+            case ReplicationPublisher.TELLER:
+                putRecord(tellers, payload, 0);
+                break;
+            case ReplicationPublisher.ACCOUNT:
+                putRecord(accounts, payload, 1);
+                break;
+            case ReplicationPublisher.REMOVED:
+                removeRecord(payload);
+                break;
+            case ReplicationPublisher.JOURNAL:
+                pendingJournal.add(payload);
+                return;
+            case ReplicationPublisher.JOURNAL_RESET:
+                resetJournal(Long.parseLong(payload));
+                return;
+            case ReplicationPublisher.ROTATED:
+                String[] rotation = payload.split("\\|");
+                if (rotation.length < 2) {
+                    throw new IllegalArgumentException("Rotation needs an epoch and a byte count");
+                }
+                rotateJournal(Long.parseLong(rotation[0]), Long.parseLong(rotation[1]));
+                return;
+            case ReplicationPublisher.ARCHIVE_DATA:
+                writeArchiveData(payload);
+                return;
+            case ReplicationPublisher.ARCHIVE_INDEX:
+                indexArchiveSegment(payload);
+                return;
+            case ReplicationPublisher.HEARTBEAT:
+                primarySequence = Math.max(primarySequence, sequence);
+                return;
+            default:
+                LOG.warn("replication.record.unknown", "kind", kind);
+                return;
+        }
+        appliedSequence = sequence;
+        primarySequence = Math.max(primarySequence, sequence);
+        lastCommitMillis = commitMillis;
+        lastDelayMillis = lastContactMillis - commitMillis;
+    }
+
+    private void putRecord(Map<String, String> records, String line, int keyField) {
+        String[] fields = line.split("\\|", keyField + 2);
+        if (fields.length > keyField) {
+            records.put(fields[keyField], line);
+            stateChanged = true;
+        }
+    }
+
+    // Payload is "KIND|key" for a record the primary no longer holds, such as a compacted tombstone
+    private void removeRecord(String payload) {
+        String[] fields = payload.split("\\|", 2);
+        Map<String, String> records = null;
+        if (fields.length == 2) {
+            switch (fields[0]) {
+                case ReplicationPublisher.CUSTOMER:
+                    records = customers;
+                    break;
+                case ReplicationPublisher.TELLER:
+                    records = tellers;
+                    break;
+                case ReplicationPublisher.ACCOUNT:
+                    records = accounts;
+                    break;
+            }
+        }
+        if (records == null) {
+            LOG.warn("replication.record.invalid", "record", payload);
+            return;
+        }
+        if (records.remove(fields[1]) != null) {
+            stateChanged = true;
+        }
+    }
+
+    // The offset is only meaningful in the epoch it was taken in, so both are read together
+    private String hello() throws IOException {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(journalLockFile)) {
+            long size = Files.exists(journal) ? Files.size(journal) : 0;
+            return "HELLO|" + lock.getGeneration() + "|" + size + "|" + archive.getSegments().size();
+        }
+    }
+
+    // The primary could not resume from our offset, so its whole hot journal follows
+    private void resetJournal(long epoch) throws IOException {
+        pendingJournal.clear();
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(journalLockFile)) {
+            Files.deleteIfExists(journal);
+            lock.adoptGeneration(epoch);
+        }
+        LOG.info("replication.journal.reset", "epoch", epoch);
+    }
+
+    // Mirrors a rotation on the primary: the archived lines are cut from the front of the
+    // journal, after any lines received before the announcement are appended
+    private void rotateJournal(long epoch, long dropBytes) throws IOException {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(journalLockFile)) {
+            appendPendingJournal();
+            Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            try (FileChannel source = FileChannel.open(journal, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = Math.min(dropBytes, source.size());
+                long size = source.size();
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+                target.force(true);
+            } catch (NoSuchFileException e) {
+                Files.deleteIfExists(temp);
+                lock.adoptGeneration(epoch);
+                return;
+            }
+            Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lock.adoptGeneration(epoch);
+        }
+        LOG.info("replication.journal.rotated", "epoch", epoch, "bytes", dropBytes);
+    }
+
+    // Payload is "fileName|offset|base64 bytes"; the first chunk of a file starts it afresh
+    private void writeArchiveData(String payload) throws IOException {
+        String[] fields = payload.split("\\|", 3);
+        if (fields.length < 3 || fields[0].contains("/") || fields[0].contains("\\") || fields[0].startsWith(".")) {
+            LOG.warn("replication.record.invalid", "record", fields[0]);
+            return;
+        }
+        long offset = Long.parseLong(fields[1]);
+        byte[] bytes = Base64.getDecoder().decode(fields[2]);
+        Files.createDirectories(archive.getDirectory());
+        try (FileChannel channel = offset == 0
+                ? FileChannel.open(archive.getDirectory().resolve(fields[0]), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(archive.getDirectory().resolve(fields[0]), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+
+    private void indexArchiveSegment(String payload) throws IOException {
+        TransactionArchive.Segment segment = TransactionArchive.Segment.fromFileString(payload);
+        if (segment == null) {
+            LOG.warn("replication.record.invalid", "record", payload);
+            return;
+        }
+        archive.verify(segment);
+        archive.addToIndex(List.of(segment));
+    }
+
+    // Callers hold the journal lock
+    private void appendPendingJournal() throws IOException {
+        if (!pendingJournal.isEmpty()) {
+            Files.write(journal, pendingJournal, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            pendingJournal.clear();
+        }
+    }
+
+    // Files are written under the directory lock so a BankService opened here never sees a partial state
+    private synchronized void flush() {
+        if (pendingJournal.isEmpty() && (!stateChanged || inSnapshot)) {
+            return;
+        }
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(dataDirectory.resolve(LOCK_FILE).toString())) {
+            try (DataDirectoryLock journalLock = DataDirectoryLock.acquire(journalLockFile)) {
+                appendPendingJournal();
+            }
+            if (stateChanged && !inSnapshot) {
+                writeLines(CUSTOMERS_FILE, customers.values());
+                writeLines(USERS_FILE, customers.values());
+                writeLines(TELLERS_FILE, tellers.values());
+                writeLines(ACCOUNTS_FILE, accounts.values());
+                stateChanged = false;
+            }
+            lock.bumpGeneration();
+        } catch (IOException e) {
+            LOG.error("replication.flush.failed", e);
+        }
+    }
+
+    private void writeLines(String fileName, Iterable<String> lines) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(dataDirectory.resolve(fileName).toFile()))) {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        }
+    }
+
+    public synchronized String status() {
+        Object[] fields = statusFields();
+        StringBuilder sb = new StringBuilder(promoted ? "Promoted" : socket != null ? "Following" : "Disconnected");
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            sb.append(", ").append(fields[i]).append(": ").append(fields[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    // Lag is how old the newest applied commit is while the primary has newer ones, or 0 when caught up;
+    // the delay is how long the last record took from commit on the primary to being applied here
+    private synchronized Object[] statusFields() {
+        long now = System.currentTimeMillis();
+        long recordsBehind = primarySequence - appliedSequence;
+        long lagMillis = recordsBehind > 0 || inSnapshot ? now - lastCommitMillis : 0;
+        return new Object[] {
+                "appliedSequence", appliedSequence,
+                "recordsBehind", recordsBehind,
+                "lagMillis", lagMillis,
+                "lastDelayMillis", lastDelayMillis,
+                "unflushedJournal", pendingJournal.size(),
+                "sinceContactMillis", lastContactMillis == 0 ? -1 : now - lastContactMillis
+        };
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
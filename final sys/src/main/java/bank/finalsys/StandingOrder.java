@@ -0,0 +1,98 @@
+package bank.finalsys;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+public class StandingOrder {
+    public enum Frequency {
+        DAILY,
+        WEEKLY,
+        MONTHLY;
+
+        public long next(long fromMillis) {
+            ZonedDateTime from = Instant.ofEpochMilli(fromMillis).atZone(ZoneId.systemDefault());
+            switch (this) {
+                case DAILY:
+                    return from.plusDays(1).toInstant().toEpochMilli();
+                case WEEKLY:
+                    return from.plusWeeks(1).toInstant().toEpochMilli();
+                default:
+                    return from.plusMonths(1).toInstant().toEpochMilli();
+            }
+        }
+    }
+
+    private final String orderId;
+    private final String fromAccount;
+    private final String toAccount;
+    private final double amount;
+    private final Frequency frequency;
+    private long nextDue;
+
+    // A null fromAccount makes this a recurring deposit into toAccount
+    public StandingOrder(String orderId, String fromAccount, String toAccount, double amount,
+                         Frequency frequency, long nextDue) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Standing order amount must be positive");
+        }
+        this.orderId = orderId;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.nextDue = nextDue;
+    }
+
+    public String getOrderId() { return orderId; }
+    public String getFromAccount() { return fromAccount; }
+    public String getToAccount() { return toAccount; }
+    public double getAmount() { return amount; }
+    public Frequency getFrequency() { return frequency; }
+    public synchronized long getNextDue() { return nextDue; }
+
+    public boolean isDeposit() {
+        return fromAccount == null;
+    }
+
+    // Unique per occurrence, so a re-run after a crash is de-duplicated by BankService
+    public String occurrenceRequestId(long due) {
+        return orderId + "@" + due;
+    }
+
+    public synchronized void advance() {
+        nextDue = frequency.next(nextDue);
+    }
+
+    // Adopts a later due time recorded by another instance that ran this order
+    synchronized void catchUp(long storedNextDue) {
+        nextDue = Math.max(nextDue, storedNextDue);
+    }
+
+    public synchronized String toFileString() {
+        return orderId + "|" + (fromAccount == null ? "" : fromAccount) + "|" + toAccount + "|" +
+                amount + "|" + frequency + "|" + nextDue;
+    }
+
+    public static StandingOrder fromFileString(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length >= 6) {
+            try {
+                return new StandingOrder(parts[0], parts[1].isEmpty() ? null : parts[1], parts[2],
+                        Double.parseDouble(parts[3]), Frequency.valueOf(parts[4]), Long.parseLong(parts[5]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Standing Order [ID: " + orderId +
+                (isDeposit() ? ", Deposit to: " + toAccount : ", From: " + fromAccount + ", To: " + toAccount) +
+                ", Amount: BWP " + String.format("%.2f", amount) +
+                ", Frequency: " + frequency +
+                ", Next Due: " + Instant.ofEpochMilli(getNextDue()).atZone(ZoneId.systemDefault()).toLocalDate() + "]";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,365 @@
+package bank.finalsys;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Runs standing orders from a timing wheel. Each tick collects the orders that
+// fell due and executes them as one batch through BankService; occurrences missed
+// while the process was down are executed in order on the first tick after loading.
+// Only the instance holding the runner lock file executes orders, so processes sharing
+// the data directory do not each post the same occurrence. Every change to the orders
+// file re-reads it under its own lock first, so instances that create or cancel orders
+// never write back a stale list over one another.
+public class StandingOrderScheduler {
+    private static final BankLogger LOG = BankLogger.getLogger(StandingOrderScheduler.class);
+
+    private final BankService bankService;
+    private final String fileName;
+    private final String lockFile;
+    private final String runnerLockFile;
+    private final long tickMillis;
+    private final IdAllocator orderIds;
+    private final TimingWheel<StandingOrder> wheel;
+    private final Map<String, StandingOrder> orders = new LinkedHashMap<>();
+    private final Object runLock = new Object();
+    private ScheduledExecutorService scheduler;
+    // Held from the first run until stop(), guarded by runLock
+    private FileChannel runnerChannel;
+    private FileLock runnerLock;
+    // Generation of the orders file this instance last read or wrote, guarded by this
+    private long seenGeneration = -1;
+
+    public StandingOrderScheduler(BankService bankService, String fileName, String idsFile, long tickMillis) {
+        this.bankService = bankService;
+        this.fileName = fileName;
+        this.lockFile = fileName + ".lock";
+        this.runnerLockFile = fileName + ".runner";
+        this.tickMillis = tickMillis;
+        this.orderIds = new IdAllocator(idsFile, "SO", this::firstFreeOrderNumber);
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        refresh();
+    }
+
+    public StandingOrder create(String fromAccount, String toAccount, double amount,
+                                StandingOrder.Frequency frequency, long firstDue) {
+        if (bankService.findAccount(toAccount) == null
+                || (fromAccount != null && bankService.findAccount(fromAccount) == null)) {
+            throw new IllegalArgumentException("Account not found");
+        }
+        if (toAccount.equals(fromAccount)) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        StandingOrder order = new StandingOrder(orderIds.nextId(), fromAccount, toAccount, amount, frequency, firstDue);
+        update(stored -> stored.put(order.getOrderId(), order));
+        LOG.info("standing.order.created", "order", order.getOrderId(), "to", toAccount, "frequency", frequency);
+        return order;
+    }
+
+    // The wheel entry is left in place and skipped when it fires
+    public boolean cancel(String orderId) {
+        boolean removed = update(stored -> stored.remove(orderId) != null);
+        if (removed) {
+            LOG.info("standing.order.cancelled", "order", orderId);
+        }
+        return removed;
+    }
+
+    // Cancels every order paying from or into the account, including orders created by
+    // other processes that this instance has not read yet
+    public int cancelForAccount(String accountNumber) {
+        List<String> cancelled = update(stored -> {
+            List<String> matching = new ArrayList<>();
+            stored.values().removeIf(order -> {
+                boolean match = accountNumber.equals(order.getFromAccount()) || accountNumber.equals(order.getToAccount());
+                if (match) {
+                    matching.add(order.getOrderId());
+                }
+                return match;
+            });
+            return matching;
+        });
+        for (String orderId : cancelled) {
+            LOG.info("standing.order.cancelled", "order", orderId, "account", accountNumber);
+        }
+        return cancelled.size();
+    }
+
+    public List<StandingOrder> getOrders() {
+        refresh();
+        return snapshot();
+    }
+
+    private synchronized List<StandingOrder> snapshot() {
+        return new ArrayList<>(orders.values());
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runDue(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                LOG.error("standing.orders.failed", e);
+            }
+        }, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        synchronized (runLock) {
+            releaseRunnerLock();
+        }
+    }
+
+    // Executes every occurrence due at or before now and returns how many were posted.
+    // Returns 0 without running anything while another instance holds the runner lock.
+    public int runDue(long now) {
+        synchronized (runLock) {
+            if (!holdRunnerLock()) {
+                return 0;
+            }
+            // Picks up orders created or cancelled by other processes since the last tick
+            refresh();
+            List<StandingOrder> due = new ArrayList<>();
+            wheel.advance(now, due::add);
+            List<StandingOrder> active = new ArrayList<>();
+            List<Occurrence> batch = new ArrayList<>();
+            for (StandingOrder order : due) {
+                if (!isActive(order)) {
+                    continue;
+                }
+                active.add(order);
+                for (long at = order.getNextDue(); at <= now; at = order.getFrequency().next(at)) {
+                    batch.add(new Occurrence(order, at));
+                }
+            }
+            if (active.isEmpty()) {
+                return 0;
+            }
+
+            int executed;
+            try {
+                executed = bankService.postStandingOrders(batch);
+            } catch (RuntimeException e) {
+                // Nothing was posted; the orders are retried on the next tick
+                for (StandingOrder order : active) {
+                    wheel.schedule(order, order.getNextDue());
+                }
+                throw e;
+            }
+            for (Occurrence occurrence : batch) {
+                if (occurrence.failure != null) {
+                    // Insufficient funds, a closed account or a withdrawal the account type refuses
+                    LOG.warn("standing.order.skipped", "order", occurrence.order.getOrderId(),
+                            "occurrence", occurrence.requestId, "reason", occurrence.failure);
+                }
+            }
+            for (StandingOrder order : active) {
+                while (order.getNextDue() <= now) {
+                    order.advance();
+                }
+                wheel.schedule(order, order.getNextDue());
+            }
+            try {
+                update(stored -> null);
+            } catch (UncheckedIOException e) {
+                // Already logged; the advanced due times are written with the next change
+            }
+            LOG.info("standing.orders.batch", "due", active.size(), "executed", executed,
+                    "failed", batch.size() - executed);
+            return executed;
+        }
+    }
+
+    // Takes the runner lock file unless another process or scheduler holds it. Orders are
+    // re-read on taking it, since the previous holder may have advanced or added them.
+    // Callers hold runLock.
+    private boolean holdRunnerLock() {
+        if (runnerLock != null) {
+            return true;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(runnerLockFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return false;
+            }
+            runnerChannel = channel;
+            runnerLock = lock;
+        } catch (OverlappingFileLockException e) {
+            // Another scheduler in this JVM runs the orders
+            closeQuietly(channel);
+            return false;
+        } catch (IOException e) {
+            LOG.error("standing.orders.lock.failed", e, "file", runnerLockFile);
+            closeQuietly(channel);
+            return false;
+        }
+        synchronized (this) {
+            orders.clear();
+            seenGeneration = -1;
+        }
+        refresh();
+        LOG.info("standing.orders.runner", "file", runnerLockFile);
+        return true;
+    }
+
+    private void releaseRunnerLock() {
+        if (runnerLock == null) {
+            return;
+        }
+        try {
+            runnerLock.release();
+        } catch (IOException e) {
+            LOG.warn("standing.orders.unlock.failed", "reason", e.getMessage());
+        }
+        closeQuietly(runnerChannel);
+        runnerLock = null;
+        runnerChannel = null;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private synchronized boolean isActive(StandingOrder order) {
+        return orders.get(order.getOrderId()) == order;
+    }
+
+    // Re-reads the orders file if another instance wrote it since this one last looked
+    private void refresh() {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            synchronized (this) {
+                if (lock.getGeneration() == seenGeneration) {
+                    return;
+                }
+            }
+            merge(read());
+            synchronized (this) {
+                seenGeneration = lock.getGeneration();
+                LOG.info("standing.orders.loaded", "count", orders.size());
+            }
+        } catch (IOException e) {
+            LOG.error("standing.orders.load.failed", e, "file", fileName);
+        }
+    }
+
+    // Applies one change to the orders as currently stored, then writes them back. The file
+    // is re-read under its lock first, so changes other instances made are kept.
+    private <T> T update(Function<Map<String, StandingOrder>, T> change) {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            Map<String, StandingOrder> stored = read();
+            T result = change.apply(stored);
+            merge(stored);
+            List<StandingOrder> snapshot = snapshot();
+            try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+                for (StandingOrder order : snapshot) {
+                    writer.println(order.toFileString());
+                }
+            }
+            long generation = lock.bumpGeneration();
+            synchronized (this) {
+                seenGeneration = generation;
+            }
+            return result;
+        } catch (IOException e) {
+            LOG.error("standing.orders.save.failed", e, "file", fileName);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Makes this instance's orders match the stored ones. Orders created elsewhere are
+    // scheduled and orders cancelled elsewhere dropped; for an order known to both, the
+    // later due time wins, since only the runner advances orders.
+    private synchronized void merge(Map<String, StandingOrder> stored) {
+        for (StandingOrder order : stored.values()) {
+            StandingOrder local = orders.get(order.getOrderId());
+            if (local == null) {
+                orders.put(order.getOrderId(), order);
+                wheel.schedule(order, order.getNextDue());
+            } else {
+                local.catchUp(order.getNextDue());
+            }
+        }
+        orders.keySet().retainAll(stored.keySet());
+    }
+
+    private Map<String, StandingOrder> read() throws IOException {
+        Map<String, StandingOrder> stored = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                StandingOrder order = StandingOrder.fromFileString(line.trim());
+                if (order == null) {
+                    LOG.warn("standing.order.invalid", "record", line);
+                    continue;
+                }
+                stored.put(order.getOrderId(), order);
+            }
+        } catch (FileNotFoundException e) {
+            // No standing orders yet
+        }
+        return stored;
+    }
+
+    // One payment of a standing order. The request ID names the occurrence, so a posting
+    // that was made before a crash or by another process is not repeated.
+    static class Occurrence {
+        final StandingOrder order;
+        final String requestId;
+        // Set by BankService when the payment is not posted
+        String failure;
+
+        Occurrence(StandingOrder order, long due) {
+            this.order = order;
+            this.requestId = order.occurrenceRequestId(due);
+        }
+    }
+
+    private synchronized long firstFreeOrderNumber() {
+        long max = 1000;
+        for (String orderId : orders.keySet()) {
+            try {
+                max = Math.max(max, Long.parseLong(orderId.replace("SO", "")));
+            } catch (NumberFormatException e) {
+                // Ignore unexpected IDs
+            }
+        }
+        return max + 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+package bank.finalsys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Batch job writing one monthly statement file per customer. Customers are taken
+// in fixed-size chunks. The journal is streamed once, and each posting is spilled
+// to a temporary file for the chunk holding its account; each chunk's file is then
+// read back into a summary for just that chunk's accounts, which are fed to a
+// bounded worker pool so no more than a few statements are in flight.
+public class StatementGenerator {
+    private static final BankLogger LOG = BankLogger.getLogger(StatementGenerator.class);
+
+    // Customers whose account summaries are held in memory at once
+    private static final int CHUNK_SIZE = 5_000;
+
+    // Prefixes of a spilled posting: the side of it that belongs to the chunk
+    private static final char DEBITED = 'D';
+    private static final char CREDITED = 'C';
+
+    private static final String RULE = "════════════════════════════════════════";
+
+    private final List<BankCustomer> customers;
+    private final TransactionLog transactionLog;
+    private final Path outputDirectory;
+    private final int workers;
+
+    public StatementGenerator(List<BankCustomer> customers, TransactionLog transactionLog,
+                              Path outputDirectory, int workers) {
+        this.customers = customers;
+        this.transactionLog = transactionLog;
+        this.outputDirectory = outputDirectory;
+        this.workers = Math.max(1, workers);
+    }
+
+    public Report generate(YearMonth month) throws IOException {
+        long startTime = System.nanoTime();
+        ZoneId zone = ZoneId.systemDefault();
+        long periodStart = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long periodEnd = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        Path monthDirectory = outputDirectory.resolve(month.toString());
+        Files.createDirectories(monthDirectory);
+
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Path spillDirectory = Files.createTempDirectory(outputDirectory, "spill-");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Path> spills = spill(spillDirectory, periodStart);
+            for (int from = 0; from < customers.size(); from += CHUNK_SIZE) {
+                List<BankCustomer> chunk = customers.subList(from, Math.min(from + CHUNK_SIZE, customers.size()));
+                Map<String, AccountActivity> activity = summarise(chunk, spills.get(from / CHUNK_SIZE), periodEnd);
+                for (BankCustomer customer : chunk) {
+                    executor.execute(() -> {
+                        try {
+                            writeStatement(monthDirectory.resolve(customer.getCustomerId() + ".txt"), customer, month, activity);
+                            written.incrementAndGet();
+                        } catch (IOException | UncheckedIOException e) {
+                            failed.incrementAndGet();
+                            LOG.error("statement.write.failed", e, "customer", customer.getCustomerId());
+                        }
+                    });
+                }
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deleteSpills(spillDirectory);
+        }
+
+        Report report = new Report(month, written.get(), failed.get(), System.nanoTime() - startTime);
+        LOG.info("statements.generated", "month", month, "written", report.getStatementCount(),
+                "failed", report.getFailedCount(), "millis", report.getElapsedMillis(),
+                "perSecond", String.format("%.1f", report.getStatementsPerSecond()));
+        return report;
+    }
+
+    // Postings from the period onwards are enough: an account without any in the period
+    // opens at the balance before its first later posting, or at its current balance.
+    // Returns one file per chunk, each holding that chunk's postings in journal order; a
+    // transfer between two chunks is written to both. Only the account-to-chunk map is
+    // held in memory while the journal streams.
+    private List<Path> spill(Path directory, long periodStart) throws IOException {
+        Map<String, Integer> chunkOf = new HashMap<>();
+        for (int i = 0; i < customers.size(); i++) {
+            for (Account account : customers.get(i).getAccounts()) {
+                chunkOf.put(account.getAccountNumber(), i / CHUNK_SIZE);
+            }
+        }
+        List<Path> files = new ArrayList<>();
+        List<BufferedWriter> writers = new ArrayList<>();
+        try {
+            for (int from = 0; from < customers.size(); from += CHUNK_SIZE) {
+                Path file = directory.resolve("chunk-" + files.size() + ".txt");
+                files.add(file);
+                writers.add(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+            }
+            transactionLog.forEach(null, periodStart, Long.MAX_VALUE, transaction -> {
+                try {
+                    spill(writers, chunkOf.get(transaction.getAccountNumber()), DEBITED, transaction);
+                    if (transaction.getCounterpartyAccount() != null) {
+                        spill(writers, chunkOf.get(transaction.getCounterpartyAccount()), CREDITED, transaction);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for (BufferedWriter writer : writers) {
+                writer.close();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (BufferedWriter writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Only reached when the spill has already failed; the files go with the directory
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void spill(List<BufferedWriter> writers, Integer chunk, char side,
+                              Transaction transaction) throws IOException {
+        if (chunk != null) {
+            BufferedWriter writer = writers.get(chunk);
+            writer.write(side);
+            writer.write('|');
+            writer.write(transaction.toFileString());
+            writer.newLine();
+        }
+    }
+
+    private Map<String, AccountActivity> summarise(List<BankCustomer> chunk, Path spill,
+                                                   long periodEnd) throws IOException {
+        Map<String, AccountActivity> activity = new HashMap<>();
+        for (BankCustomer customer : chunk) {
+            for (Account account : customer.getAccounts()) {
+                activity.put(account.getAccountNumber(), new AccountActivity());
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(spill, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                boolean credited = line.charAt(0) == CREDITED;
+                Transaction transaction = Transaction.fromFileString(line.substring(2));
+                if (transaction == null) {
+                    continue;
+                }
+                AccountActivity summary = activity.get(
+                        credited ? transaction.getCounterpartyAccount() : transaction.getAccountNumber());
+                if (summary != null) {
+                    summary.record(transaction, credited, periodEnd);
+                }
+            }
+        }
+        return activity;
+    }
+
+    private static void deleteSpills(Path directory) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            LOG.warn("statement.spill.cleanup.failed", "directory", directory, "reason", e.getMessage());
+        }
+    }
+
+    private void writeStatement(Path file, BankCustomer customer, YearMonth month,
+                                Map<String, AccountActivity> activity) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("BOTSWANA NATIONAL BANK - MONTHLY STATEMENT");
+            writer.newLine();
+            writer.write("Statement Period: " + month);
+            writer.newLine();
+            writer.write("Customer: " + customer.getFullName() + " (" + customer.getCustomerId() + ")");
+            writer.newLine();
+            writer.write("Address: " + customer.getAddress());
+            writer.newLine();
+
+            List<Account> accounts = customer.getAccounts();
+            if (accounts.isEmpty()) {
+                writer.write(RULE);
+                writer.newLine();
+                writer.write("No accounts held.");
+                writer.newLine();
+                return;
+            }
+
+            for (Account account : accounts) {
+                AccountActivity summary = activity.getOrDefault(account.getAccountNumber(), AccountActivity.NONE);
+                double opening = summary.openingBalance(account.getPostedBalance());
+                double closing = summary.closingBalance(opening);
+
+                writer.write(RULE);
+                writer.newLine();
+                writer.write("Account: " + account.getAccountNumber() + " (" + account.getAccountType() + ")" +
+                        ", Branch: " + account.getBranch());
+                writer.newLine();
+                writeLine(writer, "Opening Balance:", opening);
+                writeLine(writer, "Deposits (" + summary.depositCount + "):", summary.deposits);
+                writeLine(writer, "Withdrawals (" + summary.withdrawalCount + "):", summary.withdrawals);
+                writeLine(writer, "Transfers In (" + summary.transferInCount + "):", summary.transfersIn);
+                writeLine(writer, "Transfers Out (" + summary.transferOutCount + "):", summary.transfersOut);
+                writeLine(writer, "Interest:", summary.interest);
+                writeLine(writer, "Closing Balance:", closing);
+            }
+        }
+    }
+
+    private void writeLine(BufferedWriter writer, String label, double amount) throws IOException {
+        writer.write(String.format("  %-22s BWP %12.2f", label, amount));
+        writer.newLine();
+    }
+
+    // Fixed-size per-account summary built while streaming the journal
+    private static class AccountActivity {
+        static final AccountActivity NONE = new AccountActivity();
+
+        double periodOpening = Double.NaN;
+        double periodClosing = Double.NaN;
+        double balanceAfterPeriod = Double.NaN;
+        double deposits;
+        double withdrawals;
+        double interest;
+        double transfersIn;
+        double transfersOut;
+        int depositCount;
+        int withdrawalCount;
+        int transferInCount;
+        int transferOutCount;
+
+        // The counterparty side of a transfer is the credited account. Only postings from
+        // the start of the period onwards are passed in.
+        void record(Transaction transaction, boolean counterparty, long periodEnd) {
+            long timestamp = transaction.getTimestamp();
+            double balanceAfter = counterparty ? transaction.getCounterpartyBalanceAfter() : transaction.getBalanceAfter();
+            double change = counterparty ? transaction.getAmount() : transaction.getBalanceChange();
+            if (timestamp < periodEnd) {
+                if (Double.isNaN(periodOpening)) {
+                    periodOpening = balanceAfter - change;
+                }
+                periodClosing = balanceAfter;
+                switch (transaction.getType()) {
+                    case DEPOSIT:
+                        deposits += transaction.getAmount();
+                        depositCount++;
+                        break;
+                    case WITHDRAWAL:
+                        withdrawals += transaction.getAmount();
+                        withdrawalCount++;
+                        break;
+                    case INTEREST:
+                        interest += transaction.getAmount();
+                        break;
+                    case TRANSFER:
+                        if (counterparty) {
+                            transfersIn += transaction.getAmount();
+                            transferInCount++;
+                        } else {
+                            transfersOut += transaction.getAmount();
+                            transferOutCount++;
+                        }
+                        break;
+                }
+            } else if (Double.isNaN(balanceAfterPeriod)) {
+                // Balance held at period end, recovered from the first later posting
+                balanceAfterPeriod = balanceAfter - change;
+            }
+        }
+
+        double openingBalance(double currentBalance) {
+            if (!Double.isNaN(periodOpening)) return periodOpening;
+            if (!Double.isNaN(balanceAfterPeriod)) return balanceAfterPeriod;
+            return currentBalance;
+        }
+
+        double closingBalance(double openingBalance) {
+            return Double.isNaN(periodClosing) ? openingBalance : periodClosing;
+        }
+    }
+
+    public static class Report {
+        private final YearMonth month;
+        private final int statementCount;
+        private final int failedCount;
+        private final long elapsedNanos;
+
+        private Report(YearMonth month, int statementCount, int failedCount, long elapsedNanos) {
+            this.month = month;
+            this.statementCount = statementCount;
+            this.failedCount = failedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public YearMonth getMonth() { return month; }
+        public int getStatementCount() { return statementCount; }
+        public int getFailedCount() { return failedCount; }
+        public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+        public double getStatementsPerSecond() {
+            return elapsedNanos == 0 ? 0 : statementCount / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return "Statements for " + month + ": " + statementCount + " written, " + failedCount + " failed in " +
+                    getElapsedMillis() + " ms (" + String.format("%.1f", getStatementsPerSecond()) + " statements/sec)";
+        }
+    }
+}
\ No newline at end of file
@@ -12,6 +12,9 @@ import javafx.stage.Modality;
 import java.util.List;
 
 public class TellerDashboardController {
+    private static final BankLogger LOG = BankLogger.getLogger(TellerDashboardController.class);
+    private static final int TOP_LIST_SIZE = 5;
+
     @FXML private Label welcomeLabel;
     @FXML private TextField menuChoiceField;
     @FXML private VBox contentArea;
@@ -23,7 +26,10 @@ public class TellerDashboardController {
     private Stage primaryStage;
 
     public TellerDashboardController() {
-        this.bankService = new BankService();
+        this.bankService = Main.getBankService();
+        this.bankService.startInterestTrickle();
+        this.bankService.startStandingOrders();
+        this.bankService.startCompaction();
     }
 
     public void setCurrentUser(User user) {
@@ -66,6 +72,8 @@ public class TellerDashboardController {
 
         messageLabel.setText("");
         contentArea.getChildren().clear();
+        // Another workstation may have written to the data directory since the last action
+        bankService.refresh();
 
         switch (choice) {
             case "1":
@@ -309,7 +317,7 @@ public class TellerDashboardController {
 
         } catch (Exception e) {
             messageLabel.setText("Error opening account window: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("account.window.failed", e);
         }
     }
 
@@ -323,7 +331,7 @@ public class TellerDashboardController {
             }
 
             bankService.processMonthlyInterest();
-            messageLabel.setText("Monthly interest processed successfully for " + affectedAccounts + " interest-bearing accounts!");
+            messageLabel.setText("Accrued interest posted successfully for " + affectedAccounts + " interest-bearing accounts!");
         } catch (Exception e) {
             messageLabel.setText("Error processing interest: " + e.getMessage());
         }
@@ -346,7 +354,12 @@ public class TellerDashboardController {
             if (customers.isEmpty()) {
                 sb.append("No customers found in the system.");
             } else {
-                sb.append("Total Customers: ").append(customers.size()).append("\n\n");
+                BalanceAggregates.Totals bankTotals = bankService.getBankTotals();
+                sb.append("Total Customers: ").append(customers.size()).append("\n");
+                sb.append("Total Accounts: ").append(bankTotals.getAccountCount())
+                        .append(", Total Posted Balance: BWP ").append(String.format("%.2f", bankTotals.getBalance()))
+                        .append("\n\n");
+                appendLargestDepositors(sb);
                 for (BankCustomer customer : customers) {
                     sb.append(customer.toString()).append("\n");
                     if (!customer.getAccounts().isEmpty()) {
@@ -369,7 +382,43 @@ public class TellerDashboardController {
         contentArea.getChildren().add(results);
     }
 
+    // Read from the live rankings, so the dashboard never sorts the full account list
+    private void appendLargestDepositors(StringBuilder sb) {
+        sb.append("Largest Depositors:\n");
+        int rank = 1;
+        for (BankCustomer customer : bankService.getTopCustomers(TOP_LIST_SIZE)) {
+            sb.append("  ").append(rank++).append(". ").append(customer.getFirstName()).append(" ")
+                    .append(customer.getSurname()).append(" (").append(customer.getCustomerId()).append("): BWP ")
+                    .append(String.format("%.2f", bankService.getCustomerTotals(customer.getCustomerId()).getBalance()))
+                    .append("\n");
+        }
+        for (String branch : bankService.getBranches()) {
+            appendTopAccounts(sb, "Largest accounts at " + branch, bankService.getTopAccounts(branch, null, TOP_LIST_SIZE));
+        }
+        for (String accountType : new String[] { "SAVINGS", "INVESTMENT", "CHEQUE" }) {
+            appendTopAccounts(sb, "Largest " + accountType + " accounts",
+                    bankService.getTopAccounts(null, accountType, TOP_LIST_SIZE));
+        }
+        sb.append("\n");
+    }
+
+    private void appendTopAccounts(StringBuilder sb, String heading, List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        sb.append(heading).append(":\n");
+        int rank = 1;
+        for (Account account : accounts) {
+            sb.append("  ").append(rank++).append(". ").append(account.getAccountNumber()).append(" (")
+                    .append(account.getCustomer().getCustomerId()).append("): BWP ")
+                    .append(String.format("%.2f", account.getPostedBalance())).append("\n");
+        }
+    }
+
     private void logout() {
+        bankService.stopInterestTrickle();
+        bankService.stopCompaction();
+        bankService.stopStandingOrders();
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("LoginView.fxml"));
             Parent root = loader.load();
@@ -382,7 +431,7 @@ public class TellerDashboardController {
             primaryStage.setTitle("Botswana National Bank - Login");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("logout.failed", e);
             primaryStage.close();
         }
     }
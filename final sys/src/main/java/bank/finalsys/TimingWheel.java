@@ -0,0 +1,116 @@
+package bank.finalsys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: LEVELS wheels of SLOTS buckets, each level covering
+// SLOTS times the span of the one below. Inserting is O(1); entries move down a
+// level when their bucket comes round, and fire from the lowest level.
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> buckets = new ArrayList<>();
+    private final List<Entry<T>> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    public synchronized void schedule(T item, long deadlineMillis) {
+        // Rounded up so an entry never fires before its deadline
+        place(new Entry<>(item, (deadlineMillis + tickMillis - 1) / tickMillis));
+        size++;
+    }
+
+    // Fires every entry whose deadline is at or before now, in tick order
+    public synchronized void advance(long nowMillis, Consumer<T> due) {
+        fire(overdue, due);
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level);
+            }
+            fire(buckets.get((int) (currentTick & SLOT_MASK)), due);
+        }
+        // Entries cascaded onto the current tick land in the overdue list
+        fire(overdue, due);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry) {
+        if (entry.deadlineTick <= currentTick) {
+            overdue.add(entry);
+            return;
+        }
+        // The lowest level whose parent span still contains the deadline; its slot there
+        // is always ahead of the current one, so it comes round before the deadline passes
+        for (int level = 0; level < LEVELS; level++) {
+            int parentShift = SLOT_BITS * (level + 1);
+            if ((entry.deadlineTick >>> parentShift) == (currentTick >>> parentShift)) {
+                int slot = (int) ((entry.deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                buckets.get(level * SLOTS + slot).add(entry);
+                return;
+            }
+        }
+        // Beyond the top wheel: park in top-level slot 0, which is only cascaded when the
+        // whole wheel wraps, and re-place the entry from there
+        buckets.get((LEVELS - 1) * SLOTS).add(entry);
+    }
+
+    private void cascade(int level) {
+        int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        List<Entry<T>> bucket = buckets.get(level * SLOTS + slot);
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> moving = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Entry<T> entry : moving) {
+            place(entry);
+        }
+    }
+
+    private void fire(List<Entry<T>> bucket, Consumer<T> due) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> firing = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Entry<T> entry : firing) {
+            if (entry.deadlineTick <= currentTick) {
+                size--;
+                due.accept(entry.item);
+            } else {
+                place(entry);
+            }
+        }
+    }
+
+    private static class Entry<T> {
+        final T item;
+        final long deadlineTick;
+
+        Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package bank.finalsys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
+
+// Live "largest balance" rankings: accounts across the bank, per branch and per
+// account type, and customers by their total balance. Each ranking is kept sorted
+// as postings arrive, so a change costs O(log n) and reading the top N walks only
+// N entries instead of sorting every account.
+public class TopBalances {
+    private final BalanceAggregates aggregates;
+    private final Ranking<Account> accounts = new Ranking<>();
+    private final Map<String, Ranking<Account>> accountsByBranch = new ConcurrentHashMap<>();
+    private final Map<String, Ranking<Account>> accountsByType = new ConcurrentHashMap<>();
+    private final Ranking<BankCustomer> customers = new Ranking<>();
+
+    // Customer totals are read from the aggregates, so they must be updated first
+    public TopBalances(BalanceAggregates aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    // Callers hold the account lock
+    public void accountChanged(Account account) {
+        String accountNumber = account.getAccountNumber();
+        double balance = account.getPostedBalance();
+        accounts.update(accountNumber, account, () -> balance);
+        accountsByBranch.computeIfAbsent(account.getBranch(), key -> new Ranking<>())
+                .update(accountNumber, account, () -> balance);
+        accountsByType.computeIfAbsent(account.getAccountType(), key -> new Ranking<>())
+                .update(accountNumber, account, () -> balance);
+        customerChanged(account.getCustomer());
+    }
+
+    public void accountRemoved(Account account) {
+        String accountNumber = account.getAccountNumber();
+        accounts.remove(accountNumber);
+        Ranking<Account> branch = accountsByBranch.get(account.getBranch());
+        if (branch != null) branch.remove(accountNumber);
+        Ranking<Account> type = accountsByType.get(account.getAccountType());
+        if (type != null) type.remove(accountNumber);
+        customerChanged(account.getCustomer());
+    }
+
+    private void customerChanged(BankCustomer customer) {
+        String customerId = customer.getCustomerId();
+        // Read inside the update so concurrent postings to the same customer land in order
+        customers.update(customerId, customer, () -> aggregates.getCustomerTotals(customerId).getBalance());
+    }
+
+    public void customerRemoved(BankCustomer customer) {
+        customers.remove(customer.getCustomerId());
+    }
+
+    // Null branch or account type ranks every branch or type
+    public List<Account> topAccounts(String branch, String accountType, int limit) {
+        if (branch != null) {
+            Ranking<Account> ranking = accountsByBranch.get(branch);
+            if (ranking == null) {
+                return new ArrayList<>();
+            }
+            return ranking.top(limit, account -> accountType == null || accountType.equals(account.getAccountType()));
+        }
+        if (accountType != null) {
+            Ranking<Account> ranking = accountsByType.get(accountType);
+            return ranking == null ? new ArrayList<>() : ranking.top(limit, null);
+        }
+        return accounts.top(limit, null);
+    }
+
+    public List<BankCustomer> topCustomers(int limit) {
+        return customers.top(limit, null);
+    }
+
+    public List<String> getBranches() {
+        List<String> branches = new ArrayList<>(accountsByBranch.keySet());
+        branches.sort(null);
+        return branches;
+    }
+
+    // Entries ordered largest balance first. A heap would need a linear search to move an
+    // entry whose balance changed, so this keeps a sorted map plus each entry's current key.
+    private static class Ranking<T> {
+        private final ConcurrentSkipListMap<RankKey, T> ranked = new ConcurrentSkipListMap<>();
+        private final Map<String, RankKey> keys = new ConcurrentHashMap<>();
+
+        void update(String id, T item, DoubleSupplier balance) {
+            keys.compute(id, (key, previous) -> {
+                if (previous != null) {
+                    ranked.remove(previous);
+                }
+                RankKey current = new RankKey(balance.getAsDouble(), id);
+                ranked.put(current, item);
+                return current;
+            });
+        }
+
+        void remove(String id) {
+            keys.computeIfPresent(id, (key, previous) -> {
+                ranked.remove(previous);
+                return null;
+            });
+        }
+
+        List<T> top(int limit, Predicate<? super T> filter) {
+            List<T> top = new ArrayList<>(Math.min(limit, 64));
+            for (T item : ranked.values()) {
+                if (top.size() >= limit) {
+                    break;
+                }
+                if (filter == null || filter.test(item)) {
+                    top.add(item);
+                }
+            }
+            return top;
+        }
+    }
+
+    private static class RankKey implements Comparable<RankKey> {
+        final double balance;
+        final String id;
+
+        RankKey(double balance, String id) {
+            this.balance = balance;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(RankKey other) {
+            int byBalance = Double.compare(other.balance, balance);
+            return byBalance != 0 ? byBalance : id.compareTo(other.id);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package bank.finalsys;
+
+public class Transaction {
+    private final long timestamp;
+    private final String accountNumber;
+    private final TransactionType type;
+    private final double amount;
+    private final double balanceAfter;
+    private final String counterpartyAccount;
+    private final double counterpartyBalanceAfter;
+
+    public Transaction(long timestamp, String accountNumber, TransactionType type, double amount, double balanceAfter) {
+        this(timestamp, accountNumber, type, amount, balanceAfter, null, 0);
+    }
+
+    // Transfers record both legs: accountNumber is debited and counterpartyAccount is credited
+    public Transaction(long timestamp, String accountNumber, TransactionType type, double amount, double balanceAfter,
+                       String counterpartyAccount, double counterpartyBalanceAfter) {
+        this.timestamp = timestamp;
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.counterpartyAccount = counterpartyAccount;
+        this.counterpartyBalanceAfter = counterpartyBalanceAfter;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public String getAccountNumber() { return accountNumber; }
+    public TransactionType getType() { return type; }
+    public double getAmount() { return amount; }
+    public double getBalanceAfter() { return balanceAfter; }
+    public String getCounterpartyAccount() { return counterpartyAccount; }
+    public double getCounterpartyBalanceAfter() { return counterpartyBalanceAfter; }
+
+    // Signed effect of this posting on the account balance
+    public double getBalanceChange() {
+        return type == TransactionType.WITHDRAWAL || type == TransactionType.TRANSFER ? -amount : amount;
+    }
+
+    public String toFileString() {
+        String line = timestamp + "|" + accountNumber + "|" + type + "|" + amount + "|" + balanceAfter;
+        if (counterpartyAccount != null) {
+            line += "|" + counterpartyAccount + "|" + counterpartyBalanceAfter;
+        }
+        return line;
+    }
+
+    public static Transaction fromFileString(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length >= 5) {
+            try {
+                if (parts.length >= 7) {
+                    return new Transaction(Long.parseLong(parts[0]), parts[1], TransactionType.valueOf(parts[2]),
+                            Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+                            parts[5], Double.parseDouble(parts[6]));
+                }
+                return new Transaction(Long.parseLong(parts[0]), parts[1], TransactionType.valueOf(parts[2]),
+                        Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (counterpartyAccount != null) {
+            return type + " [From: " + accountNumber + ", To: " + counterpartyAccount +
+                    ", Amount: BWP " + String.format("%.2f", amount) + "]";
+        }
+        return type + " [Account: " + accountNumber +
+                ", Amount: BWP " + String.format("%.2f", amount) +
+                ", Balance: BWP " + String.format("%.2f", balanceAfter) + "]";
+    }
+}
\ No newline at end of file
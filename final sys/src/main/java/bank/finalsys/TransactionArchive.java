@@ -0,0 +1,277 @@
+package bank.finalsys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Immutable, compressed history for closed months. Journal lines move into gzip
+// segments and statement folders into zip files; index.txt lists every segment
+// with its time range, record count and the CRC32 of the compressed bytes. Queries
+// only open the segments whose range overlaps, and verify the checksum first.
+// A segment file is ignored until its index entry is added. Nothing here is read
+// at startup.
+public class TransactionArchive {
+    private static final BankLogger LOG = BankLogger.getLogger(TransactionArchive.class);
+
+    private static final String INDEX_FILE = "index.txt";
+    static final String JOURNAL = "JOURNAL";
+    static final String STATEMENTS = "STATEMENTS";
+
+    private final Path directory;
+
+    public TransactionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() { return directory; }
+
+    public synchronized List<Segment> getSegments() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8)) {
+                Segment segment = Segment.fromFileString(line.trim());
+                if (segment != null) {
+                    segments.add(segment);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing archived yet
+        }
+        return segments;
+    }
+
+    // Streams archived postings touching the account (null for all) within [from, to)
+    public void forEach(String accountNumber, long from, long to, Consumer<Transaction> consumer) throws IOException {
+        forEach(getSegments(), accountNumber, from, to, consumer);
+    }
+
+    // As above, over segments the caller read from the index
+    void forEach(List<Segment> segments, String accountNumber, long from, long to,
+                 Consumer<Transaction> consumer) throws IOException {
+        for (Segment segment : segments) {
+            if (!segment.kind.equals(JOURNAL) || segment.lastTimestamp < from || segment.firstTimestamp >= to) {
+                continue;
+            }
+            Path file = directory.resolve(segment.fileName);
+            verify(file, segment);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Transaction transaction = Transaction.fromFileString(line);
+                    if (transaction != null && transaction.getTimestamp() >= from && transaction.getTimestamp() < to
+                            && TransactionLog.touches(transaction, accountNumber)) {
+                        consumer.accept(transaction);
+                    }
+                }
+            }
+        }
+    }
+
+    // Throws if the segment's file does not match the checksum in its index entry
+    void verify(Segment segment) throws IOException {
+        verify(directory.resolve(segment.fileName), segment);
+    }
+
+    private void verify(Path file, Segment segment) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (crc.getValue() != segment.crc) {
+            throw new IOException("Archive segment " + segment.fileName + " failed its checksum");
+        }
+    }
+
+    public SegmentWriter openJournalSegment(YearMonth month) throws IOException {
+        Files.createDirectories(directory);
+        return new SegmentWriter(month, freeName("transactions-" + month, ".gz"));
+    }
+
+    // Zips a closed month's statement folder and removes the folder
+    public Segment archiveStatements(YearMonth month, Path monthDirectory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = freeName("statements-" + month, ".zip");
+        CRC32 crc = new CRC32();
+        int count = 0;
+        List<Path> written = new ArrayList<>();
+        try (ZipOutputStream zip = new ZipOutputStream(new CheckedOutputStream(Files.newOutputStream(file), crc));
+             DirectoryStream<Path> statements = Files.newDirectoryStream(monthDirectory)) {
+            for (Path statement : statements) {
+                zip.putNextEntry(new ZipEntry(statement.getFileName().toString()));
+                Files.copy(statement, zip);
+                zip.closeEntry();
+                written.add(statement);
+                count++;
+            }
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        Segment segment = new Segment(STATEMENTS, file.getFileName().toString(), month,
+                month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli(),
+                month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1, count, crc.getValue());
+        addToIndex(segment);
+        for (Path statement : written) {
+            Files.delete(statement);
+        }
+        Files.delete(monthDirectory);
+        return segment;
+    }
+
+    private Path freeName(String base, String extension) {
+        Path file = directory.resolve(base + extension);
+        for (int part = 2; Files.exists(file); part++) {
+            file = directory.resolve(base + "-part" + part + extension);
+        }
+        return file;
+    }
+
+    private void addToIndex(Segment segment) throws IOException {
+        addToIndex(List.of(segment));
+    }
+
+    // The index is replaced as a whole so a reader never sees a partial line. Segments
+    // already listed are skipped, so recovering an interrupted rotation can repeat this.
+    synchronized void addToIndex(List<Segment> segments) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Segment existing : getSegments()) {
+            lines.add(existing.toFileString());
+        }
+        List<Segment> added = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (!lines.contains(segment.toFileString())) {
+                lines.add(segment.toFileString());
+                added.add(segment);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Segment segment : added) {
+            LOG.info("archive.segment.added", "file", segment.fileName, "records", segment.count);
+        }
+    }
+
+    // Removes the file of a segment that never made it into the index
+    void discard(Segment segment) throws IOException {
+        Files.deleteIfExists(directory.resolve(segment.fileName));
+        LOG.info("archive.segment.discarded", "file", segment.fileName);
+    }
+
+    // Writes one journal segment. Finishing completes the file; it only becomes visible
+    // to queries once the caller adds it to the index.
+    public class SegmentWriter implements AutoCloseable {
+        private final YearMonth month;
+        private final Path file;
+        private final CRC32 crc = new CRC32();
+        private final BufferedWriter writer;
+        private long firstTimestamp = Long.MAX_VALUE;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private int count;
+        private boolean finished;
+
+        private SegmentWriter(YearMonth month, Path file) throws IOException {
+            this.month = month;
+            this.file = file;
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new CheckedOutputStream(Files.newOutputStream(file), crc)), StandardCharsets.UTF_8));
+        }
+
+        public void write(Transaction transaction) throws IOException {
+            writer.write(transaction.toFileString());
+            writer.newLine();
+            firstTimestamp = Math.min(firstTimestamp, transaction.getTimestamp());
+            lastTimestamp = Math.max(lastTimestamp, transaction.getTimestamp());
+            count++;
+        }
+
+        public Segment finish() throws IOException {
+            writer.close();
+            finished = true;
+            return new Segment(JOURNAL, file.getFileName().toString(), month,
+                    firstTimestamp, lastTimestamp, count, crc.getValue());
+        }
+
+        // Closing without finishing discards the partial segment
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                writer.close();
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public static class Segment {
+        private final String kind;
+        private final String fileName;
+        private final YearMonth month;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final int count;
+        private final long crc;
+
+        Segment(String kind, String fileName, YearMonth month, long firstTimestamp, long lastTimestamp,
+                int count, long crc) {
+            this.kind = kind;
+            this.fileName = fileName;
+            this.month = month;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.count = count;
+            this.crc = crc;
+        }
+
+        public String getKind() { return kind; }
+        public String getFileName() { return fileName; }
+        public YearMonth getMonth() { return month; }
+        public int getCount() { return count; }
+
+        String toFileString() {
+            return kind + "|" + fileName + "|" + month + "|" + firstTimestamp + "|" + lastTimestamp + "|" +
+                    count + "|" + crc;
+        }
+
+        static Segment fromFileString(String line) {
+            String[] parts = line.split("\\|");
+            if (parts.length < 7) {
+                return null;
+            }
+            try {
+                return new Segment(parts[0], parts[1], YearMonth.parse(parts[2]), Long.parseLong(parts[3]),
+                        Long.parseLong(parts[4]), Integer.parseInt(parts[5]), Long.parseLong(parts[6]));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + month + ": " + fileName + ", " + count + " records";
+        }
+    }
+}
\ No newline at end of file
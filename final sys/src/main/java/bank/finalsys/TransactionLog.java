@@ -0,0 +1,390 @@
+package bank.finalsys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only journal of every posting, one Transaction per line. Appends and rotation
+// exclude each other through a lock file beside the journal, which covers other processes
+// and other instances in this JVM; the journal itself cannot carry the lock because
+// rotation replaces it. The lock file's generation counts rotations, so a byte offset
+// into the journal only means something together with the epoch it was taken in.
+public class TransactionLog {
+    private static final BankLogger LOG = BankLogger.getLogger(TransactionLog.class);
+
+    // Postings are stamped before they queue for the journal lock, so a line can be older
+    // than the one before it by however long that wait took
+    static final long ORDER_SLACK_MILLIS = 10L * 60 * 1000;
+    private static final int TAIL_BLOCK_BYTES = 64 * 1024;
+    // Enough for a long timestamp and the separator after it
+    private static final int TIMESTAMP_BYTES = 20;
+
+    private final Path path;
+    private final String lockFile;
+    // Exists only while a rotation is between writing its segments and indexing them
+    private final Path rotationFile;
+    private final TransactionArchive archive;
+
+    public TransactionLog(String fileName, TransactionArchive archive) {
+        this.path = Paths.get(fileName);
+        this.lockFile = lockFileFor(fileName);
+        this.rotationFile = Paths.get(fileName + ".rotation");
+        this.archive = archive;
+        if (Files.exists(rotationFile)) {
+            try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+                recoverRotation(lock);
+            } catch (IOException e) {
+                LOG.error("transactions.rotation.recovery.failed", e, "file", rotationFile);
+            }
+        }
+    }
+
+    static String lockFileFor(String journalFile) {
+        return journalFile + ".lock";
+    }
+
+    public void append(Transaction transaction) {
+        append(List.of(transaction));
+    }
+
+    public void append(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile);
+             BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Transaction transaction : transactions) {
+                writer.write(transaction.toFileString());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOG.error("transactions.append.failed", e, "count", transactions.size());
+        }
+    }
+
+    // Streams the journal without holding it in memory
+    public void forEach(Consumer<Transaction> consumer) throws IOException {
+        try (BufferedReader reader = open()) {
+            if (reader != null) {
+                forEach(reader, consumer);
+            }
+        }
+    }
+
+    // Archived history first, then the hot journal; accountNumber null matches every posting.
+    // The index is read and the journal opened together under the lock, so a rotation
+    // cannot move postings from one to the other in between.
+    public void forEach(String accountNumber, long from, long to, Consumer<Transaction> consumer) throws IOException {
+        List<TransactionArchive.Segment> segments;
+        BufferedReader journal;
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            segments = archive.getSegments();
+            journal = open();
+        }
+        try (BufferedReader reader = journal) {
+            archive.forEach(segments, accountNumber, from, to, consumer);
+            if (reader != null) {
+                forEach(reader, transaction -> {
+                    if (transaction.getTimestamp() >= from && transaction.getTimestamp() < to
+                            && touches(transaction, accountNumber)) {
+                        consumer.accept(transaction);
+                    }
+                });
+            }
+        }
+    }
+
+    // Every posting at or after since, without reading the journal from the start: the
+    // archive is only opened for segments reaching into the window, and the journal is read
+    // back from its end to the first line older than since by more than ORDER_SLACK_MILLIS
+    public void forEachSince(long since, Consumer<Transaction> consumer) throws IOException {
+        List<TransactionArchive.Segment> segments;
+        FileChannel journal;
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            segments = archive.getSegments();
+            try {
+                journal = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                journal = null;
+            }
+        }
+        try (FileChannel channel = journal) {
+            archive.forEach(segments, null, since, Long.MAX_VALUE, consumer);
+            if (channel == null) {
+                return;
+            }
+            channel.position(tailStart(channel, since - ORDER_SLACK_MILLIS));
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            forEach(reader, transaction -> {
+                if (transaction.getTimestamp() >= since) {
+                    consumer.accept(transaction);
+                }
+            });
+        }
+    }
+
+    // Offset of the first line after the last one stamped before floor, or 0 if there is none.
+    // Each block is read with a few bytes of the next one so a timestamp never straddles two.
+    private static long tailStart(FileChannel channel, long floor) throws IOException {
+        long size = channel.size();
+        ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_BYTES + TIMESTAMP_BYTES);
+        long laterLine = size;
+        long blockEnd = size;
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - TAIL_BLOCK_BYTES);
+            block.clear();
+            block.limit((int) Math.min(size - blockStart, TAIL_BLOCK_BYTES + TIMESTAMP_BYTES));
+            while (block.hasRemaining()) {
+                if (channel.read(block, blockStart + block.position()) <= 0) {
+                    break;
+                }
+            }
+            int length = block.position();
+            for (int i = (int) (blockEnd - blockStart) - 1; i >= -1; i--) {
+                boolean lineStart = i >= 0 ? block.get(i) == '\n' : blockStart == 0;
+                if (!lineStart) {
+                    continue;
+                }
+                long timestamp = timestampAt(block, i + 1, length);
+                if (timestamp >= 0 && timestamp < floor) {
+                    return laterLine;
+                }
+                laterLine = blockStart + i + 1;
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    // The digits before the first separator of the line starting at offset, or -1 if they
+    // do not form a timestamp
+    private static long timestampAt(ByteBuffer block, int offset, int length) {
+        long timestamp = 0;
+        int end = Math.min(length, offset + TIMESTAMP_BYTES);
+        for (int i = offset; i < end; i++) {
+            byte b = block.get(i);
+            if (b == '|') {
+                return i > offset ? timestamp : -1;
+            }
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            timestamp = timestamp * 10 + (b - '0');
+        }
+        return -1;
+    }
+
+    // Null when nothing has been journalled yet
+    private BufferedReader open() throws IOException {
+        try {
+            return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void forEach(BufferedReader reader, Consumer<Transaction> consumer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            Transaction transaction = Transaction.fromFileString(line.trim());
+            if (transaction != null) {
+                consumer.accept(transaction);
+            }
+        }
+    }
+
+    static boolean touches(Transaction transaction, String accountNumber) {
+        return accountNumber == null || accountNumber.equals(transaction.getAccountNumber())
+                || accountNumber.equals(transaction.getCounterpartyAccount());
+    }
+
+    // Moves the leading run of postings older than the cutoff into one archive segment per
+    // month and rewrites the journal with the rest. Postings out of time order stay behind
+    // and go with the next rotation. The scan runs while postings carry on; appends only
+    // wait while the rest of the journal, including anything appended since the scan, is
+    // copied and moved into place and the segments are indexed. onRotated is told the new
+    // epoch and how many bytes left the front of the file before any new posting lands.
+    public synchronized int archiveBefore(long cutoff, RotationListener onRotated) throws IOException {
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            recoverRotation(lock);
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        Map<YearMonth, TransactionArchive.SegmentWriter> writers = new TreeMap<>();
+        List<TransactionArchive.Segment> segments = new ArrayList<>();
+        CRC32 prefix = new CRC32();
+        long archivedBytes = 0;
+        int archived = 0;
+        try {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+                int b;
+                while ((b = in.read()) != -1) {
+                    line.write(b);
+                    if (b != '\n') {
+                        continue;
+                    }
+                    String text = line.toString(StandardCharsets.UTF_8).trim();
+                    if (!text.isEmpty()) {
+                        Transaction transaction = Transaction.fromFileString(text);
+                        if (transaction == null || transaction.getTimestamp() >= cutoff) {
+                            break;
+                        }
+                        YearMonth month = YearMonth.from(Instant.ofEpochMilli(transaction.getTimestamp()).atZone(zone));
+                        TransactionArchive.SegmentWriter writer = writers.get(month);
+                        if (writer == null) {
+                            writer = archive.openJournalSegment(month);
+                            writers.put(month, writer);
+                        }
+                        writer.write(transaction);
+                        archived++;
+                    }
+                    prefix.update(line.toByteArray());
+                    archivedBytes += line.size();
+                    line.reset();
+                }
+            } catch (NoSuchFileException e) {
+                return 0;
+            }
+            if (archived == 0) {
+                return 0;
+            }
+            for (TransactionArchive.SegmentWriter writer : writers.values()) {
+                segments.add(writer.finish());
+            }
+        } finally {
+            for (TransactionArchive.SegmentWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        // Until the segments are indexed the rotation file records them, so a rotation cut
+        // short is finished or undone by recoverRotation instead of archiving the rows twice
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(lockFile)) {
+            writeRotation(archivedBytes, prefix.getValue(), segments);
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = archivedBytes;
+                long size = source.size();
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+                target.force(true);
+            }
+            replaceJournal(temp);
+            long epoch = lock.bumpGeneration();
+            archive.addToIndex(segments);
+            Files.delete(rotationFile);
+            onRotated.rotated(epoch, archivedBytes);
+        }
+        LOG.info("transactions.archived", "records", archived, "bytes", archivedBytes, "segments", writers.size());
+        return archived;
+    }
+
+    void replaceJournal(Path temp) throws IOException {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // First line: archived byte count and CRC32 of those bytes; then one line per segment
+    private void writeRotation(long archivedBytes, long prefixCrc, List<TransactionArchive.Segment> segments)
+            throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(archivedBytes + "|" + prefixCrc);
+        for (TransactionArchive.Segment segment : segments) {
+            lines.add(segment.toFileString());
+        }
+        Path temp = rotationFile.resolveSibling(rotationFile.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, rotationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Settles a rotation that stopped before indexing its segments. A journal that still
+    // starts with the archived bytes was never replaced, so the segments are discarded and
+    // the rows stay in the journal; otherwise the rows are only in the segments, which are
+    // indexed and the replaced journal starts a new epoch. Callers hold the lock.
+    private void recoverRotation(DataDirectoryLock lock) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(rotationFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        String[] header = lines.isEmpty() ? new String[0] : lines.get(0).split("\\|");
+        List<TransactionArchive.Segment> segments = new ArrayList<>();
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            TransactionArchive.Segment segment = TransactionArchive.Segment.fromFileString(line.trim());
+            if (segment != null) {
+                segments.add(segment);
+            }
+        }
+        boolean replaced;
+        try {
+            replaced = !startsWith(Long.parseLong(header[0]), Long.parseLong(header[1]));
+        } catch (RuntimeException e) {
+            // Written atomically, so this is not a crash; the segment files are left unindexed
+            LOG.error("transactions.rotation.invalid", e, "file", rotationFile);
+            Files.delete(rotationFile);
+            return;
+        }
+        if (replaced) {
+            lock.bumpGeneration();
+            archive.addToIndex(segments);
+        } else {
+            for (TransactionArchive.Segment segment : segments) {
+                archive.discard(segment);
+            }
+        }
+        Files.delete(rotationFile);
+        LOG.warn("transactions.rotation.recovered", "segments", segments.size(), "indexed", replaced);
+    }
+
+    private boolean startsWith(long length, long crc) throws IOException {
+        CRC32 actual = new CRC32();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            byte[] buffer = new byte[8192];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return false;
+                }
+                actual.update(buffer, 0, read);
+                remaining -= read;
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return actual.getValue() == crc;
+    }
+
+    public Path getPath() { return path; }
+
+    public interface RotationListener {
+        void rotated(long epoch, long archivedBytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,8 @@
+package bank.finalsys;
+
+public enum TransactionType {
+    DEPOSIT,
+    WITHDRAWAL,
+    INTEREST,
+    TRANSFER
+}
\ No newline at end of file
@@ -0,0 +1,407 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Configurable checks run before every withdrawal. Rules are read from a text file,
+// one per line, and compiled into a fixed array per account type, so a check is a
+// map lookup plus a walk over a few objects. The file is re-read when it changes.
+//
+//   name|accountType or *|kind|arguments
+//   cheque-max|CHEQUE|MAX_AMOUNT|20000          single withdrawal above the limit
+//   investment-floor|INVESTMENT|MIN_BALANCE|500  balance left below the floor
+//   burst|*|VELOCITY|5|3600                      more than 5 withdrawals in 3600 seconds
+//   closed-branch|*|BRANCH_BLOCK|Maun Branch     any withdrawal at the branch
+//   cheque-daily|CHEQUE|DAILY_LIMIT|10000        account total over a rolling 24 hours
+//   customer-daily|*|CUSTOMER_DAILY_LIMIT|25000  customer total over all their accounts
+//
+// Rolling totals are kept for every withdrawal, so a daily rule added later applies at
+// once. They are seeded from the journal when the service loads, and only see
+// withdrawals made by this process.
+public class WithdrawalRules {
+    private static final BankLogger LOG = BankLogger.getLogger(WithdrawalRules.class);
+
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final Path path;
+    private final long reloadCheckMillis;
+    private final TransactionLog journal;
+    private final Function<String, Account> accounts;
+    private final WithdrawalWindow accountWindow = new WithdrawalWindow();
+    private final WithdrawalWindow customerWindow = new WithdrawalWindow();
+    private volatile Compiled compiled = new Compiled(new ArrayList<>());
+    private volatile long nextReloadCheck;
+    private long loadedModified = -1;
+
+    public WithdrawalRules(String fileName, long reloadCheckMillis, TransactionLog journal,
+                           Function<String, Account> accounts) {
+        this.path = Paths.get(fileName);
+        this.reloadCheckMillis = reloadCheckMillis;
+        this.journal = journal;
+        this.accounts = accounts;
+        reloadIfChanged();
+    }
+
+    // Throws when a rule declines the withdrawal. Otherwise the amount is counted in the
+    // rolling totals straight away: the account lock does not cover the customer total,
+    // so the tightest daily limit is checked and the amount added in one step per total.
+    // A withdrawal that fails after this must be cancelled. Callers hold the account lock.
+    public void check(Account account, double amount, long now) {
+        if (now >= nextReloadCheck) {
+            reloadIfDue(now);
+        }
+        DailyLimit accountLimit = null;
+        DailyLimit customerLimit = null;
+        for (Rule rule : compiled.rulesFor(account.getAccountType())) {
+            if (rule instanceof DailyLimit) {
+                DailyLimit daily = (DailyLimit) rule;
+                if (daily.perCustomer) {
+                    customerLimit = DailyLimit.tighter(customerLimit, daily);
+                } else {
+                    accountLimit = DailyLimit.tighter(accountLimit, daily);
+                }
+            } else if (rule.rejects(account, amount, now)) {
+                throw decline(rule);
+            }
+        }
+        String accountKey = account.getAccountNumber();
+        if (!accountWindow.reserve(accountKey, amount, DailyLimit.limitOf(accountLimit), now)) {
+            throw decline(accountLimit);
+        }
+        if (!customerWindow.reserve(account.getCustomer().getCustomerId(), amount,
+                DailyLimit.limitOf(customerLimit), now)) {
+            accountWindow.add(accountKey, -amount, now);
+            throw decline(customerLimit);
+        }
+    }
+
+    private static IllegalArgumentException decline(Rule rule) {
+        rule.hits.increment();
+        return new IllegalArgumentException("Withdrawal declined: " + rule.describe());
+    }
+
+    // Takes a withdrawal that check() counted but that did not go through back out of the totals
+    public void cancel(Account account, double amount, long now) {
+        accountWindow.add(account.getAccountNumber(), -amount, now);
+        customerWindow.add(account.getCustomer().getCustomerId(), -amount, now);
+    }
+
+    // Lets stateful rules count a withdrawal once it has gone through
+    public void withdrawn(Account account, double amount, long now) {
+        for (Rule rule : compiled.rulesFor(account.getAccountType())) {
+            rule.withdrawn(account, amount, now);
+        }
+    }
+
+    // Replays the last day of withdrawals and transfer debits from the tail of the journal.
+    // Called once the accounts are loaded, before any posting, so no withdrawal is counted twice.
+    synchronized void seedWindows(long now) {
+        long since = now - WithdrawalWindow.BUCKETS * WithdrawalWindow.BUCKET_MILLIS;
+        int[] replayed = new int[1];
+        try {
+            journal.forEachSince(since, transaction -> {
+                TransactionType type = transaction.getType();
+                if (type != TransactionType.WITHDRAWAL && type != TransactionType.TRANSFER) {
+                    return;
+                }
+                accountWindow.add(transaction.getAccountNumber(), transaction.getAmount(), transaction.getTimestamp());
+                Account account = accounts.apply(transaction.getAccountNumber());
+                if (account != null) {
+                    customerWindow.add(account.getCustomer().getCustomerId(), transaction.getAmount(),
+                            transaction.getTimestamp());
+                }
+                replayed[0]++;
+            });
+        } catch (IOException e) {
+            LOG.error("withdrawal.window.seed.failed", e, "file", journal.getPath());
+        }
+        LOG.info("withdrawal.window.seeded", "withdrawals", replayed[0]);
+    }
+
+    // Rule name to the number of withdrawals it declined since it was loaded
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Rule rule : compiled.rules) {
+            counts.put(rule.name + " (" + rule.describe() + ")", rule.hits.sum());
+        }
+        return counts;
+    }
+
+    private synchronized void reloadIfDue(long now) {
+        // Another thread may have checked while this one waited for the lock
+        if (now >= nextReloadCheck) {
+            reloadIfChanged();
+        }
+    }
+
+    public synchronized void reloadIfChanged() {
+        nextReloadCheck = System.currentTimeMillis() + reloadCheckMillis;
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(path).toMillis();
+        } catch (NoSuchFileException e) {
+            modified = 0;
+        } catch (IOException e) {
+            LOG.error("withdrawal.rules.stat.failed", e, "file", path);
+            return;
+        }
+        if (modified == loadedModified) {
+            return;
+        }
+        List<Rule> rules = new ArrayList<>();
+        if (modified != 0) {
+            try {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    String trimmed = line.trim();
+                    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        rules.add(parse(trimmed));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("withdrawal.rule.invalid", "rule", trimmed, "reason", e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // Keep the rules already in force until the file can be read
+                LOG.error("withdrawal.rules.load.failed", e, "file", path);
+                return;
+            }
+        }
+        compiled = new Compiled(rules);
+        loadedModified = modified;
+        LOG.info("withdrawal.rules.loaded", "file", path, "rules", rules.size());
+    }
+
+    private Rule parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("Expected name|accountType|kind|arguments");
+        }
+        String name = parts[0].trim();
+        String accountType = parts[1].trim().toUpperCase();
+        String kind = parts[2].trim().toUpperCase();
+        try {
+            switch (kind) {
+                case "MAX_AMOUNT":
+                    return new MaxAmount(name, accountType, Double.parseDouble(parts[3]));
+                case "MIN_BALANCE":
+                    return new MinBalance(name, accountType, Double.parseDouble(parts[3]));
+                case "DAILY_LIMIT":
+                    return new DailyLimit(name, accountType, Double.parseDouble(parts[3]), false);
+                case "CUSTOMER_DAILY_LIMIT":
+                    return new DailyLimit(name, accountType, Double.parseDouble(parts[3]), true);
+                case "BRANCH_BLOCK":
+                    return new BranchBlock(name, accountType, parts[3].trim());
+                case "VELOCITY":
+                    if (parts.length < 5) {
+                        throw new IllegalArgumentException("VELOCITY needs a count and a window in seconds");
+                    }
+                    return new Velocity(name, accountType, Integer.parseInt(parts[3].trim()),
+                            Long.parseLong(parts[4].trim()) * 1000);
+                default:
+                    throw new IllegalArgumentException("Unknown rule kind " + kind);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in rule " + name);
+        }
+    }
+
+    // Rules applying to each account type in file order, wildcard rules included
+    private static class Compiled {
+        final List<Rule> rules;
+        final Map<String, Rule[]> byType = new HashMap<>();
+        final Rule[] wildcardOnly;
+
+        Compiled(List<Rule> rules) {
+            this.rules = rules;
+            List<Rule> wildcard = new ArrayList<>();
+            Set<String> types = new HashSet<>();
+            for (Rule rule : rules) {
+                if (rule.accountType.equals("*")) {
+                    wildcard.add(rule);
+                } else {
+                    types.add(rule.accountType);
+                }
+            }
+            wildcardOnly = wildcard.toArray(NO_RULES);
+            for (String type : types) {
+                List<Rule> chain = new ArrayList<>();
+                for (Rule rule : rules) {
+                    if (rule.accountType.equals("*") || rule.accountType.equals(type)) {
+                        chain.add(rule);
+                    }
+                }
+                byType.put(type, chain.toArray(NO_RULES));
+            }
+        }
+
+        Rule[] rulesFor(String accountType) {
+            Rule[] chain = byType.get(accountType);
+            return chain != null ? chain : wildcardOnly;
+        }
+    }
+
+    abstract static class Rule {
+        final String name;
+        final String accountType;
+        final LongAdder hits = new LongAdder();
+
+        Rule(String name, String accountType) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Rule name is required");
+            }
+            this.name = name;
+            this.accountType = accountType;
+        }
+
+        abstract boolean rejects(Account account, double amount, long now);
+
+        void withdrawn(Account account, double amount, long now) {
+        }
+
+        abstract String describe();
+    }
+
+    private static class MaxAmount extends Rule {
+        private final double limit;
+
+        MaxAmount(String name, String accountType, double limit) {
+            super(name, accountType);
+            this.limit = limit;
+        }
+
+        @Override
+        boolean rejects(Account account, double amount, long now) {
+            return amount > limit;
+        }
+
+        @Override
+        String describe() {
+            return "amount above BWP " + String.format("%.2f", limit);
+        }
+    }
+
+    private static class MinBalance extends Rule {
+        private final double floor;
+
+        MinBalance(String name, String accountType, double floor) {
+            super(name, accountType);
+            this.floor = floor;
+        }
+
+        @Override
+        boolean rejects(Account account, double amount, long now) {
+            return account.getPostedBalance() - amount < floor;
+        }
+
+        @Override
+        String describe() {
+            return "balance would fall below BWP " + String.format("%.2f", floor);
+        }
+    }
+
+    private static class BranchBlock extends Rule {
+        private final String branch;
+
+        BranchBlock(String name, String accountType, String branch) {
+            super(name, accountType);
+            this.branch = branch;
+        }
+
+        @Override
+        boolean rejects(Account account, double amount, long now) {
+            return branch.equalsIgnoreCase(account.getBranch());
+        }
+
+        @Override
+        String describe() {
+            return "withdrawals suspended at " + branch;
+        }
+    }
+
+    // Limits the rolling 24-hour total of the account, or of all the customer's accounts.
+    // check() applies it by reserving the amount in the matching window.
+    private static class DailyLimit extends Rule {
+        private final double limit;
+        private final boolean perCustomer;
+
+        DailyLimit(String name, String accountType, double limit, boolean perCustomer) {
+            super(name, accountType);
+            this.limit = limit;
+            this.perCustomer = perCustomer;
+        }
+
+        static DailyLimit tighter(DailyLimit current, DailyLimit candidate) {
+            return current == null || candidate.limit < current.limit ? candidate : current;
+        }
+
+        static double limitOf(DailyLimit rule) {
+            return rule == null ? Double.POSITIVE_INFINITY : rule.limit;
+        }
+
+        @Override
+        boolean rejects(Account account, double amount, long now) {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return (perCustomer ? "customer" : "account") + " daily limit of BWP " + String.format("%.2f", limit);
+        }
+    }
+
+    // Keeps the times of the last maxCount withdrawals per account in a small ring
+    private static class Velocity extends Rule {
+        private final int maxCount;
+        private final long windowMillis;
+        private final Map<String, long[]> recent = new ConcurrentHashMap<>();
+
+        Velocity(String name, String accountType, int maxCount, long windowMillis) {
+            super(name, accountType);
+            if (maxCount <= 0 || windowMillis <= 0) {
+                throw new IllegalArgumentException("VELOCITY count and window must be positive");
+            }
+            this.maxCount = maxCount;
+            this.windowMillis = windowMillis;
+        }
+
+        // Slot 0 is the next write position; slots 1..maxCount hold timestamps
+        @Override
+        boolean rejects(Account account, double amount, long now) {
+            long[] ring = recent.get(account.getAccountNumber());
+            if (ring == null) {
+                return false;
+            }
+            long oldest = ring[1 + (int) ring[0]];
+            return oldest != 0 && now - oldest < windowMillis;
+        }
+
+        @Override
+        void withdrawn(Account account, double amount, long now) {
+            long[] ring = recent.computeIfAbsent(account.getAccountNumber(), key -> new long[maxCount + 1]);
+            int position = (int) ring[0];
+            ring[1 + position] = now;
+            ring[0] = (position + 1) % maxCount;
+        }
+
+        @Override
+        String describe() {
+            return "more than " + maxCount + " withdrawals in " + (windowMillis / 1000) + " seconds";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package bank.finalsys;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Rolling 24-hour withdrawal totals per key (an account number or a customer ID).
+// Each key owns 24 hourly buckets in two flat primitive arrays, so recording and
+// summing touch a fixed number of array slots and allocate nothing once a key has
+// its slot. An amount leaves the window between 23 and 24 hours after it was taken.
+public class WithdrawalWindow {
+    static final long BUCKET_MILLIS = 60L * 60 * 1000;
+    static final int BUCKETS = 24;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private long[] bucketHours = new long[16 * BUCKETS];
+    private double[] bucketAmounts = new double[16 * BUCKETS];
+
+    public synchronized double total(String key, long now) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return 0;
+        }
+        long hour = now / BUCKET_MILLIS;
+        int base = slot * BUCKETS;
+        double total = 0;
+        for (int i = base; i < base + BUCKETS; i++) {
+            if (hour - bucketHours[i] < BUCKETS) {
+                total += bucketAmounts[i];
+            }
+        }
+        return total;
+    }
+
+    public synchronized void add(String key, double amount, long timestamp) {
+        long hour = timestamp / BUCKET_MILLIS;
+        int index = slotFor(key) * BUCKETS + (int) (hour % BUCKETS);
+        if (bucketHours[index] != hour) {
+            // The bucket still holds the same hour of an earlier day
+            bucketHours[index] = hour;
+            bucketAmounts[index] = 0;
+        }
+        bucketAmounts[index] += amount;
+    }
+
+    // Adds the amount unless the key's total would then exceed the limit. Checking and
+    // adding under one lock keeps concurrent withdrawals from both fitting under it.
+    public synchronized boolean reserve(String key, double amount, double limit, long now) {
+        if (total(key, now) + amount > limit) {
+            return false;
+        }
+        add(key, amount, now);
+        return true;
+    }
+
+    private int slotFor(String key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            slot = slots.size();
+            if ((slot + 1) * BUCKETS > bucketHours.length) {
+                bucketHours = Arrays.copyOf(bucketHours, bucketHours.length * 2);
+                bucketAmounts = Arrays.copyOf(bucketAmounts, bucketAmounts.length * 2);
+            }
+            slots.put(key, slot);
+        }
+        return slot;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BankServiceMergeTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path dataDirectory;
+
+    // Two writers on one directory: A posts two days of interest, then B, which has not
+    // synced since, deposits. B posts the same two days before its deposit; the merge must
+    // keep A's interest and B's deposit only.
+    @Test
+    void staleWriterDoesNotReplayInterestPostedElsewhere() throws IOException {
+        long lastAccrual = System.currentTimeMillis() - 2 * DAY_MILLIS - 60_000;
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.investmentAccount("ACC1001", 1000, lastAccrual));
+
+        BankService a = new BankService(dataDirectory);
+        BankService b = new BankService(dataDirectory);
+        a.postAccruedInterestBatch(10);
+        a.saveData();
+        b.deposit("ACC1001", 100);
+
+        double expected = 1000 + 1000 * 0.05 * 2 / 30 + 100;
+        assertEquals(expected, b.findAccount("ACC1001").getPostedBalance(), 0.005);
+        BankService reader = new BankService(dataDirectory);
+        assertEquals(expected, reader.findAccount("ACC1001").getPostedBalance(), 0.005);
+
+        double interest = 0;
+        for (Transaction transaction : reader.getTransactionHistory("ACC1001", 0, Long.MAX_VALUE)) {
+            if (transaction.getType() == TransactionType.INTEREST) {
+                interest += transaction.getAmount();
+            }
+        }
+        assertEquals(1000 * 0.05 * 2 / 30, interest, 0.005);
+    }
+
+    // Lines another writer left malformed are skipped by the merge, as by the loader, and the
+    // records that did change are still picked up
+    @Test
+    void mergeSkipsMalformedRecords() throws IOException {
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.chequeAccount("ACC1001", 0));
+        BankService a = new BankService(dataDirectory);
+        BankService b = new BankService(dataDirectory);
+        b.deposit("ACC1001", 100);
+        try (DataDirectoryLock lock = DataDirectoryLock.acquire(dataDirectory.resolve("bank.lock").toString())) {
+            Files.write(dataDirectory.resolve("customers.txt"),
+                    List.of("asmith|secret|CUSTOMER|CUST1002|Ann|Smith|Plot 3 Gaborone|not-a-time"),
+                    StandardOpenOption.APPEND);
+            Files.write(dataDirectory.resolve("accounts.txt"), List.of("CHEQUE|ACC1003|lots|Main|CUST1001"),
+                    StandardOpenOption.APPEND);
+            lock.bumpGeneration();
+        }
+
+        a.refresh();
+        assertEquals(100, a.findAccount("ACC1001").getPostedBalance(), 0.005);
+        assertEquals(null, a.findAccount("ACC1003"));
+    }
+
+    // A trickle batch journals its interest but leaves the accounts file to the next save
+    @Test
+    void trickledInterestIsSavedWithTheNextPosting() throws IOException {
+        long lastAccrual = System.currentTimeMillis() - 2 * DAY_MILLIS - 60_000;
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.investmentAccount("ACC1001", 1000, lastAccrual),
+                TestData.chequeAccount("ACC1002", 0));
+        BankService bankService = new BankService(dataDirectory);
+        Path accountsFile = dataDirectory.resolve("accounts.txt");
+        List<String> beforeBatch = Files.readAllLines(accountsFile);
+
+        assertEquals(1, bankService.postAccruedInterestBatch(10));
+        assertEquals(beforeBatch, Files.readAllLines(accountsFile));
+
+        bankService.deposit("ACC1002", 100);
+        BankService reader = new BankService(dataDirectory);
+        assertEquals(1000 + 1000 * 0.05 * 2 / 30, reader.findAccount("ACC1001").getPostedBalance(), 0.005);
+    }
+}
\ No newline at end of file
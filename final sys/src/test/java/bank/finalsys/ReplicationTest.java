@@ -0,0 +1,98 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicationTest {
+    private static final long WAIT_MILLIS = 15_000;
+
+    @TempDir
+    Path primaryDirectory;
+
+    @TempDir
+    Path standbyDirectory;
+
+    // The standby's journal offset was taken before the rotation, so it must not be used
+    // as an offset into the rotated journal, and the new segment must reach the standby
+    @Test
+    void standbyReconnectingAfterAnArchiveMatchesThePrimary() throws Exception {
+        TestData.writeCustomerWithAccounts(primaryDirectory, TestData.chequeAccount("ACC1001", 0));
+        long january = LocalDate.of(2020, 1, 10).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        List<String> closedMonth = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            closedMonth.add(new Transaction(january + i, "ACC1001", TransactionType.DEPOSIT, 10, 10 * i).toFileString());
+        }
+        Files.write(primaryDirectory.resolve("transactions.txt"), closedMonth, StandardCharsets.UTF_8);
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        System.setProperty(ReplicationPublisher.PORT_PROPERTY, Integer.toString(port));
+        BankService primary;
+        try {
+            primary = new BankService(primaryDirectory);
+        } finally {
+            System.clearProperty(ReplicationPublisher.PORT_PROPERTY);
+        }
+
+        StandbyReplica standby = new StandbyReplica(port, standbyDirectory);
+        standby.start();
+        primary.deposit("ACC1001", 100);
+        awaitMirrored();
+        standby.stop();
+
+        primary.deposit("ACC1001", 50);
+        assertEquals(3, primary.archiveClosedPeriods());
+        primary.deposit("ACC1001", 25);
+
+        StandbyReplica reconnected = new StandbyReplica(port, standbyDirectory);
+        reconnected.start();
+        awaitMirrored();
+        reconnected.stop();
+
+        BankService promoted = new BankService(standbyDirectory);
+        assertEquals(history(primary), history(promoted));
+        assertEquals(6, history(promoted).size());
+        assertEquals(1, promoted.getArchiveSegments().size());
+    }
+
+    private void awaitMirrored() throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!mirrored("transactions.txt") || !mirrored("archive/index.txt")) {
+            assertTrue(System.currentTimeMillis() < deadline, "standby did not catch up");
+            Thread.sleep(100);
+        }
+    }
+
+    private boolean mirrored(String fileName) throws IOException {
+        Path primaryFile = primaryDirectory.resolve(fileName);
+        Path standbyFile = standbyDirectory.resolve(fileName);
+        if (!Files.exists(primaryFile)) {
+            return !Files.exists(standbyFile);
+        }
+        return Files.exists(standbyFile) && Arrays.equals(Files.readAllBytes(primaryFile), Files.readAllBytes(standbyFile));
+    }
+
+    private static List<String> history(BankService bankService) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Transaction transaction : bankService.getTransactionHistory("ACC1001", 0, Long.MAX_VALUE)) {
+            lines.add(transaction.toFileString());
+        }
+        return lines;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandingOrderSchedulerTest {
+    @TempDir
+    Path dataDirectory;
+
+    // Two instances on one directory, as with two workstations: each occurrence is posted once
+    @Test
+    void occurrencesArePostedOnceAcrossInstances() throws IOException {
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.chequeAccount("ACC1001", 0));
+        BankService a = new BankService(dataDirectory);
+        BankService b = new BankService(dataDirectory);
+
+        // Two monthly occurrences are already due
+        long firstDue = LocalDate.now().minusMonths(1).minusDays(1).atStartOfDay(ZoneId.systemDefault())
+                .toInstant().toEpochMilli();
+        a.createStandingOrder(null, "ACC1001", 50, StandingOrder.Frequency.MONTHLY, firstDue);
+
+        assertEquals(2, a.runDueStandingOrders());
+        assertEquals(0, b.runDueStandingOrders());
+        // Once a lets go, b takes over from where a left off
+        a.stopStandingOrders();
+        assertEquals(0, b.runDueStandingOrders());
+
+        BankService reader = new BankService(dataDirectory);
+        assertEquals(100, reader.findAccount("ACC1001").getPostedBalance(), 0.005);
+        long deposits = reader.getTransactionHistory("ACC1001", 0, Long.MAX_VALUE).stream()
+                .filter(transaction -> transaction.getType() == TransactionType.DEPOSIT)
+                .count();
+        assertEquals(2, deposits);
+    }
+
+    // Each instance only knows the orders it has read, so writing its own list back would
+    // drop orders created elsewhere and bring back ones cancelled elsewhere
+    @Test
+    void createAndCancelKeepChangesMadeByOtherInstances() throws IOException {
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.chequeAccount("ACC1001", 0));
+        BankService a = new BankService(dataDirectory);
+        BankService b = new BankService(dataDirectory);
+        long due = System.currentTimeMillis() - 60_000;
+
+        StandingOrder kept = a.createStandingOrder(null, "ACC1001", 50, StandingOrder.Frequency.MONTHLY, due);
+        StandingOrder cancelled = b.createStandingOrder(null, "ACC1001", 70, StandingOrder.Frequency.MONTHLY, due);
+        assertTrue(a.cancelStandingOrder(cancelled.getOrderId()));
+        StandingOrder late = b.createStandingOrder(null, "ACC1001", 20, StandingOrder.Frequency.MONTHLY,
+                System.currentTimeMillis() + 60_000);
+
+        // a runs what is due and writes the advanced due time back over b's last change
+        assertEquals(1, a.runDueStandingOrders());
+
+        BankService reader = new BankService(dataDirectory);
+        List<String> orderIds = new ArrayList<>();
+        for (StandingOrder order : reader.getStandingOrders()) {
+            orderIds.add(order.getOrderId());
+        }
+        assertEquals(List.of(kept.getOrderId(), late.getOrderId()), orderIds);
+        assertTrue(reader.getStandingOrders().get(0).getNextDue() > System.currentTimeMillis());
+        assertEquals(50, reader.findAccount("ACC1001").getPostedBalance(), 0.005);
+    }
+
+    // A crash after posting but before the due time is written back replays the whole batch.
+    // It is larger than the old 10,000-entry cache, which evicted the batch's first keys.
+    @Test
+    void replayAfterACrashPostsNoOccurrenceTwice() throws IOException {
+        TestData.writeCustomerWithAccounts(dataDirectory, TestData.chequeAccount("ACC1001", 0));
+        BankService a = new BankService(dataDirectory);
+        long firstDue = LocalDate.now().minusYears(31).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        a.createStandingOrder(null, "ACC1001", 1, StandingOrder.Frequency.DAILY, firstDue);
+        Path orders = dataDirectory.resolve("standing_orders.txt");
+        byte[] beforeRun = Files.readAllBytes(orders);
+
+        int occurrences = a.runDueStandingOrders();
+        assertTrue(occurrences > 10_000);
+        a.stopStandingOrders();
+        Files.write(orders, beforeRun);
+
+        BankService b = new BankService(dataDirectory);
+        b.runDueStandingOrders();
+        BankService reader = new BankService(dataDirectory);
+        assertEquals(occurrences, reader.findAccount("ACC1001").getPostedBalance(), 0.005);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+package bank.finalsys;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Data directory fixture shared by the service tests: one customer, jdoe (CUST1001),
+// holding whatever accounts the test writes
+final class TestData {
+    static final String CUSTOMER_ID = "CUST1001";
+
+    private TestData() {
+    }
+
+    static void writeCustomerWithAccounts(Path dataDirectory, String... accountLines) throws IOException {
+        Files.write(dataDirectory.resolve("customers.txt"),
+                List.of("jdoe|secret|CUSTOMER|" + CUSTOMER_ID + "|John|Doe|Plot 1 Gaborone"), StandardCharsets.UTF_8);
+        Files.write(dataDirectory.resolve("accounts.txt"), Arrays.asList(accountLines), StandardCharsets.UTF_8);
+    }
+
+    static String chequeAccount(String accountNumber, double balance) {
+        return "CHEQUE|" + accountNumber + "|" + balance + "|Main|" + CUSTOMER_ID + "|Acme|Plot 2 Gaborone|1";
+    }
+
+    static String investmentAccount(String accountNumber, double balance, long lastAccrual) {
+        return "INVESTMENT|" + accountNumber + "|" + balance + "|Main|" + CUSTOMER_ID + "|" + lastAccrual + "|1";
+    }
+}
\ No newline at end of file
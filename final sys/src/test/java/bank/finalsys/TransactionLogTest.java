@@ -0,0 +1,124 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransactionLogTest {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    @TempDir
+    Path dataDirectory;
+
+    // The journal is not replaced, so the rows stay there and the next run archives them once
+    @Test
+    void rotationFailingBeforeTheJournalMovesArchivesEachRowOnce() throws IOException {
+        TransactionLog failing = new TransactionLog(journal(), archive()) {
+            @Override
+            void replaceJournal(Path temp) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        writeRows(failing);
+        assertThrows(IOException.class, () -> failing.archiveBefore(cutoff(), (epoch, bytes) -> { }));
+        assertEquals(4, history(failing).size());
+
+        TransactionLog log = new TransactionLog(journal(), archive());
+        assertEquals(3, log.archiveBefore(cutoff(), (epoch, bytes) -> { }));
+        assertEquals(4, history(log).size());
+        assertEquals(List.of("transactions-2020-01.gz"), segmentFiles());
+    }
+
+    // The journal was replaced but the process died before indexing; the segments are indexed
+    // when the journal is next opened instead of being archived a second time
+    @Test
+    void rotationStoppingAfterTheJournalMovesIsFinishedOnRestart() throws IOException {
+        TransactionLog crashing = new TransactionLog(journal(), archive()) {
+            @Override
+            void replaceJournal(Path temp) throws IOException {
+                super.replaceJournal(temp);
+                throw new IOException("killed");
+            }
+        };
+        writeRows(crashing);
+        assertThrows(IOException.class, () -> crashing.archiveBefore(cutoff(), (epoch, bytes) -> { }));
+
+        TransactionLog restarted = new TransactionLog(journal(), archive());
+        assertEquals(4, history(restarted).size());
+        assertEquals(0, restarted.archiveBefore(cutoff(), (epoch, bytes) -> { }));
+        assertEquals(List.of("transactions-2020-01.gz"), segmentFiles());
+    }
+
+    // Enough older lines to span several blocks of the backwards read, then a day of
+    // postings with one stamped a little before the line above it
+    @Test
+    void forEachSinceReadsOnlyTheTailOfTheJournal() throws IOException {
+        TransactionLog log = new TransactionLog(journal(), archive());
+        long now = System.currentTimeMillis();
+        long since = now - 24L * 60 * 60 * 1000;
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(new Transaction(since - 3_600_000 + i, "ACC1001", TransactionType.DEPOSIT, 1, i));
+        }
+        List<Transaction> expected = new ArrayList<>();
+        expected.add(new Transaction(since + 60_000, "ACC1001", TransactionType.WITHDRAWAL, 5, 0));
+        expected.add(new Transaction(since + 1_000, "ACC1001", TransactionType.WITHDRAWAL, 7, 0));
+        expected.add(new Transaction(now, "ACC1001", TransactionType.DEPOSIT, 9, 0));
+        rows.add(new Transaction(since - 1_000, "ACC1001", TransactionType.DEPOSIT, 3, 0));
+        rows.addAll(expected);
+        log.append(rows);
+
+        List<String> seen = new ArrayList<>();
+        log.forEachSince(since, transaction -> seen.add(transaction.toFileString()));
+        List<String> wanted = new ArrayList<>();
+        for (Transaction transaction : expected) {
+            wanted.add(transaction.toFileString());
+        }
+        assertEquals(wanted, seen);
+    }
+
+    private String journal() {
+        return dataDirectory.resolve("transactions.txt").toString();
+    }
+
+    private TransactionArchive archive() {
+        return new TransactionArchive(dataDirectory.resolve("archive"));
+    }
+
+    // Three postings in January 2020 and one now
+    private static void writeRows(TransactionLog log) {
+        long january = LocalDate.of(2020, 1, 10).atStartOfDay(ZONE).toInstant().toEpochMilli();
+        for (int i = 1; i <= 3; i++) {
+            log.append(new Transaction(january + i, "ACC1001", TransactionType.DEPOSIT, 10, 10 * i));
+        }
+        log.append(new Transaction(System.currentTimeMillis(), "ACC1001", TransactionType.DEPOSIT, 10, 40));
+    }
+
+    private static long cutoff() {
+        return YearMonth.now().atDay(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static List<Transaction> history(TransactionLog log) throws IOException {
+        List<Transaction> history = new ArrayList<>();
+        log.forEach("ACC1001", 0, Long.MAX_VALUE, history::add);
+        return history;
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        List<String> files = new ArrayList<>();
+        for (TransactionArchive.Segment segment : archive().getSegments()) {
+            files.add(segment.getFileName());
+        }
+        return files;
+    }
+}
\ No newline at end of file
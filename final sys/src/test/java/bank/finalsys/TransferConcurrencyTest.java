@@ -0,0 +1,71 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferConcurrencyTest {
+    private static final int THREADS_PER_DIRECTION = 4;
+    private static final int TRANSFERS_PER_THREAD = 250;
+
+    @TempDir
+    Path dataDirectory;
+
+    // Opposing transfers lock the same two accounts; with ordered locking they can neither
+    // deadlock nor lose an update
+    @Test
+    void opposingTransfersFinishAndConserveTheTotal() throws Exception {
+        TestData.writeCustomerWithAccounts(dataDirectory,
+                TestData.chequeAccount("ACC1001", 100000), TestData.chequeAccount("ACC1002", 100000));
+        BankService bankService = new BankService(dataDirectory);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS_PER_DIRECTION * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS_PER_DIRECTION; i++) {
+                workers.add(pool.submit(() -> transfers(bankService, start, "ACC1001", "ACC1002", 3)));
+                workers.add(pool.submit(() -> transfers(bankService, start, "ACC1002", "ACC1001", 2)));
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "transfers did not finish; possible deadlock");
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double net = THREADS_PER_DIRECTION * TRANSFERS_PER_THREAD * (3 - 2);
+        Account first = bankService.findAccount("ACC1001");
+        Account second = bankService.findAccount("ACC1002");
+        assertEquals(100000 - net, first.getPostedBalance(), 0.005);
+        assertEquals(100000 + net, second.getPostedBalance(), 0.005);
+        assertEquals(200000, bankService.getBankTotals().getBalance(), 0.005);
+
+        BankService reader = new BankService(dataDirectory);
+        assertEquals(200000, reader.findAccount("ACC1001").getPostedBalance()
+                + reader.findAccount("ACC1002").getPostedBalance(), 0.005);
+    }
+
+    private static Void transfers(BankService bankService, CountDownLatch start, String from, String to,
+                                  double amount) throws InterruptedException {
+        start.await();
+        for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+            bankService.transfer(from, to, amount);
+        }
+        return null;
+    }
+}
\ No newline at end of file
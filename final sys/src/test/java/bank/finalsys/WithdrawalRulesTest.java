@@ -0,0 +1,69 @@
+package bank.finalsys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WithdrawalRulesTest {
+    @TempDir
+    Path dataDirectory;
+
+    // Withdrawals from two accounts of one customer only share the customer total,
+    // not an account lock, and together must still stop at the customer limit
+    @Test
+    void concurrentWithdrawalsStayWithinTheCustomerLimit() throws Exception {
+        TestData.writeCustomerWithAccounts(dataDirectory,
+                TestData.chequeAccount("ACC1001", 5000), TestData.chequeAccount("ACC1002", 5000));
+        Files.write(dataDirectory.resolve("withdrawal_rules.txt"),
+                List.of("customer-daily|*|CUSTOMER_DAILY_LIMIT|1000"), StandardCharsets.UTF_8);
+        BankService bankService = new BankService(dataDirectory);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                String accountNumber = i % 2 == 0 ? "ACC1001" : "ACC1002";
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < 5; n++) {
+                        try {
+                            bankService.withdraw(accountNumber, 100);
+                            accepted.incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            // Declined by the limit
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(10, accepted.get());
+        assertEquals(9000, bankService.getCustomerTotals(TestData.CUSTOMER_ID).getBalance(), 0.005);
+        assertEquals(30, bankService.getWithdrawalRuleHits().values().iterator().next().longValue());
+    }
+}
\ No newline at end of file